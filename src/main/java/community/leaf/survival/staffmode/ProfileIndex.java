@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode;
+
+import community.leaf.survival.staffmode.storage.ProfileSummary;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+// Every stored profile by mode, most recently toggled first: listing staff never touches profile data.
+public final class ProfileIndex
+{
+    public record Entry(UUID uuid, @NullOr String name, Mode mode, @NullOr Instant toggledAt)
+    {
+        private Instant sortKey() { return (toggledAt == null) ? Instant.EPOCH : toggledAt; }
+    }
+    
+    public record Page(List<Entry> entries, int total, int page, int pages) {}
+    
+    private static final Comparator<Entry> MOST_RECENT_FIRST =
+        Comparator.comparing(Entry::sortKey, Comparator.reverseOrder()).thenComparing(Entry::uuid);
+    
+    private final Map<UUID, Entry> entriesByUuid = new HashMap<>();
+    private final Map<String, UUID> uuidsByName = new HashMap<>();
+    private final NavigableSet<Entry> all = new TreeSet<>(MOST_RECENT_FIRST);
+    private final Map<Mode, NavigableSet<Entry>> entriesByMode = new EnumMap<>(Mode.class);
+    
+    ProfileIndex()
+    {
+        for (Mode mode : Mode.values()) { entriesByMode.put(mode, new TreeSet<>(MOST_RECENT_FIRST)); }
+    }
+    
+    private static String key(String name) { return name.toLowerCase(Locale.ROOT); }
+    
+    void clear()
+    {
+        entriesByUuid.clear();
+        uuidsByName.clear();
+        all.clear();
+        entriesByMode.values().forEach(NavigableSet::clear);
+    }
+    
+    void put(ProfileSummary summary)
+    {
+        Mode mode = (summary.mode() == null) ? Mode.SURVIVAL : summary.mode();
+        put(new Entry(summary.uuid(), summary.name(), mode, summary.toggledAt()));
+    }
+    
+    private void put(Entry entry)
+    {
+        remove(entry.uuid());
+        
+        entriesByUuid.put(entry.uuid(), entry);
+        if (entry.name() != null) { uuidsByName.put(key(entry.name()), entry.uuid()); }
+        all.add(entry);
+        entriesByMode.get(entry.mode()).add(entry);
+    }
+    
+    void remove(UUID uuid)
+    {
+        @NullOr Entry existing = entriesByUuid.remove(uuid);
+        if (existing == null) { return; }
+        
+        if (existing.name() != null) { uuidsByName.remove(key(existing.name()), uuid); }
+        all.remove(existing);
+        entriesByMode.get(existing.mode()).remove(existing);
+    }
+    
+    void named(UUID uuid, String name)
+    {
+        @NullOr Entry existing = entriesByUuid.get(uuid);
+        if (existing != null && name.equals(existing.name())) { return; }
+        
+        if (existing == null) { put(new Entry(uuid, name, Mode.SURVIVAL, null)); }
+        else { put(new Entry(uuid, name, existing.mode(), existing.toggledAt())); }
+    }
+    
+    void toggled(UUID uuid, Mode mode, Instant timestamp)
+    {
+        @NullOr Entry existing = entriesByUuid.get(uuid);
+        put(new Entry(uuid, (existing == null) ? null : existing.name(), mode, timestamp));
+    }
+    
+    public int size() { return entriesByUuid.size(); }
+    
+    public Optional<Entry> byUuid(UUID uuid) { return Optional.ofNullable(entriesByUuid.get(uuid)); }
+    
+    public Optional<Entry> byName(String name)
+    {
+        return Optional.ofNullable(uuidsByName.get(key(name))).map(entriesByUuid::get);
+    }
+    
+    // Either walks the sorted set for the mode, or (when restricted, e.g. to online players)
+    // only sorts the handful of matching entries.
+    public Page query(@NullOr Mode mode, @NullOr Collection<UUID> restrictTo, int page, int perPage)
+    {
+        Stream<Entry> matches;
+        int total;
+        
+        if (restrictTo == null)
+        {
+            NavigableSet<Entry> entries = (mode == null) ? all : entriesByMode.get(mode);
+            matches = entries.stream();
+            total = entries.size();
+        }
+        else
+        {
+            List<Entry> entries = restrictTo.stream()
+                .flatMap(uuid -> Stream.ofNullable(entriesByUuid.get(uuid)))
+                .filter(entry -> mode == null || entry.mode() == mode)
+                .sorted(MOST_RECENT_FIRST)
+                .toList();
+            
+            matches = entries.stream();
+            total = entries.size();
+        }
+        
+        int pages = Math.max(1, (total + perPage - 1) / perPage);
+        int current = Math.max(1, Math.min(page, pages));
+        
+        List<Entry> entries = matches.skip((long) (current - 1) * perPage).limit(perPage).toList();
+        return new Page(entries, total, current, pages);
+    }
+}
@@ -15,6 +15,7 @@ import org.bukkit.entity.Player;
 import java.time.Instant;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public interface StaffMember
 {
@@ -40,4 +41,6 @@ public interface StaffMember
     Mode mode();
     
     ToggleSwitch mode(Mode mode);
+    
+    CompletableFuture<ToggleSwitch> modeAsync(Mode mode);
 }
@@ -7,125 +7,469 @@
  */
 package community.leaf.survival.staffmode;
 
-import com.rezzedup.util.valuables.Adapter;
-import community.leaf.configvalues.bukkit.data.Load;
-import community.leaf.configvalues.bukkit.data.YamlDataFile;
-import community.leaf.configvalues.bukkit.util.Sections;
 import community.leaf.survival.staffmode.snapshots.GameplaySnapshot;
-import community.leaf.survival.staffmode.snapshots.SnapshotSource;
+import community.leaf.survival.staffmode.configs.StaffModeConfig;
+import community.leaf.survival.staffmode.storage.ProfileStore;
+import community.leaf.survival.staffmode.storage.SaveReport;
+import community.leaf.survival.staffmode.storage.SectionTrees;
+import community.leaf.survival.staffmode.storage.SqlProfileStore;
+import community.leaf.survival.staffmode.storage.ToggleJournal;
+import community.leaf.survival.staffmode.storage.YamlProfileStore;
 import community.leaf.tasks.Concurrency;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
 import pl.tlinkowski.annotation.basic.NullOr;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
-import java.util.logging.Logger;
 import java.util.stream.Stream;
 
-public final class StaffModeManager extends YamlDataFile implements StaffManager
+public final class StaffModeManager implements StaffManager
 {
-    private static final String PROFILES_PATH = "staff-mode.profiles";
+    // A store and its index, loaded off the main thread to replace the current ones.
+    public record Replacement(ProfileStore store, ProfileIndex index) {}
     
     private final Map<UUID, StaffModeProfile> profilesByUuid = new HashMap<>();
     
+    // Online players currently in staff mode, checked by high-frequency listeners.
+    private final Set<UUID> inStaffMode = new HashSet<>();
+    
+    private final Set<UUID> leaving = new HashSet<>();
+    
+    private boolean isSavingSuspended = false;
+    
+    // Last time each cached profile was used, online staff are never evicted.
+    private final Map<UUID, Long> lastAccessByUuid = new HashMap<>();
+    
+    // Online players without a profile who weren't staff when last checked.
+    private final Set<UUID> knownNonStaff = new HashSet<>();
+    
+    // Name, mode and last toggle of every stored profile.
+    private ProfileIndex index = new ProfileIndex();
+    
+    private long cacheHits = 0;
+    private long cacheMisses = 0;
+    private long cacheEvictions = 0;
+    private long nonStaffHits = 0;
+    
     private final StaffModePlugin plugin;
-    private final SnapshotSource<GameplaySnapshot> snapshot;
+    private volatile @NullOr ProfileStore store;
+    private final ToggleJournal journal;
+    private final StaffModeToggles toggles;
+    private final GameplaySnapshot.Source snapshot;
     private final StaffModeProfile.Dependencies dependencies;
     
     StaffModeManager(StaffModePlugin plugin)
     {
-        super(plugin.directory().resolve("data"), "staff-mode.data.yml", Load.LATER);
-        
         this.plugin = plugin;
+        this.journal = new ToggleJournal(plugin);
+        this.toggles = new StaffModeToggles(plugin);
         this.snapshot = GameplaySnapshot.source(plugin.snapshots());
         
         this.dependencies = new StaffModeProfile.Dependencies()
         {
             @Override
-            public void updated() { StaffModeManager.this.updated(true); }
+            public void updated(UUID uuid) { store().getOrCreate(uuid).updated(true); }
+            
+            @Override
+            public GameplaySnapshot.Source snapshot() { return snapshot; }
             
             @Override
-            public SnapshotSource<GameplaySnapshot> snapshot() { return snapshot; }
+            public ConfigurationSection profileDataSection(UUID uuid) { return store().getOrCreate(uuid).data(); }
             
             @Override
-            public ConfigurationSection profileDataSection(UUID uuid)
+            public ConfigurationSection modesDataSection(UUID uuid) { return store().getOrCreate(uuid).modes(); }
+            
+            @Override
+            public void captured(UUID uuid, Mode mode, ConfigurationSection snapshot)
             {
-                return Sections.getOrCreate(profilesDataSection(), uuid.toString());
+                journal.captured(uuid, mode, SectionTrees.copy(snapshot));
             }
-        };
-        
-        reloadsWith(() ->
-        {
-            Logger logger = plugin.getLogger();
-            logger.info("Loading staff mode data...");
             
-            if (isInvalid())
+            @Override
+            public void restored(UUID uuid, Mode mode, Instant timestamp)
             {
-                logger.log(Level.SEVERE, "Unable to load data", getInvalidReason());
-                logger.log(Level.SEVERE, "Saving data backup just in case...");
-                
-                backupThenSave(plugin.backups(), "error");
-                return;
+                journal.restored(uuid, mode, timestamp);
+                index.toggled(uuid, mode, timestamp);
             }
             
-            profilesByUuid.clear();
+            @Override
+            public void named(UUID uuid, String name) { index.named(uuid, name); }
             
-            for (String uuid : profilesDataSection().getKeys(false))
+            @Override
+            public void activeMode(UUID uuid, Mode mode)
             {
-                Adapter.ofString().intoUuid().deserialize(uuid).ifPresent(this::existingProfileByUuid);
+                staffMode(uuid, mode == Mode.STAFF);
             }
-        });
+            
+            @Override
+            public boolean isApplyingImmediately(Player player)
+            {
+                return !plugin.isEnabled() || !player.isOnline() || leaving.contains(player.getUniqueId());
+            }
+            
+            @Override
+            public CompletableFuture<ToggleSwitch> toggle(StaffModeProfile profile, Mode mode)
+            {
+                return toggles.submit(profile, mode);
+            }
+        };
     }
     
-    public void saveIfUpdated(Concurrency concurrency)
+    public void reload()
     {
-        if (!isUpdated()) { return; }
+        plugin.getLogger().info("Loading staff mode data...");
         
-        String output = toYamlString();
+        profilesByUuid.clear();
+        lastAccessByUuid.clear();
+        knownNonStaff.clear();
         
-        Runnable task = () ->
+        if (store == null) { store = createStore(); }
+        
+        try { store.load(); }
+        catch (RuntimeException e)
         {
-            try
+            plugin.getLogger().log(Level.SEVERE, "Unable to use " + store.name() + " storage, falling back to YAML files", e);
+            store.close();
+            store = new YamlProfileStore(plugin);
+            store.load();
+        }
+        
+        index.clear();
+        store.summaries().values().forEach(index::put);
+        
+        // Toggles that happened after the last successful save (e.g. before a crash)
+        int replayed = journal.open(entry ->
+        {
+            profileForReplay(entry.uuid()).replay(entry);
+            
+            if (entry.type() == ToggleJournal.Type.RESTORE)
             {
-                Path path = getFilePath();
-                Files.createDirectories(path.getParent());
-                Files.writeString(path, output);
-                updated(false);
+                index.toggled(entry.uuid(), entry.mode(), entry.timestamp());
             }
-            catch (IOException e) { e.printStackTrace(); }
-        };
+        });
+        
+        if (replayed > 0) { plugin.getLogger().info("Replayed " + replayed + " journaled toggle(s)."); }
+        
+        inStaffMode.clear();
+        plugin.getServer().getOnlinePlayers().forEach(this::refreshStaffMode);
+        plugin.activeListeners().update(!inStaffMode.isEmpty());
+    }
+    
+    private StaffModeProfile profileForReplay(UUID uuid)
+    {
+        return existingProfileByUuid(uuid).orElseGet(() ->
+        {
+            return cache(new StaffModeProfile(dependencies, uuid));
+        });
+    }
+    
+    private ProfileStore createStore()
+    {
+        return createStore(plugin.config().getOrDefault(StaffModeConfig.STORAGE_TYPE));
+    }
+    
+    private ProfileStore createStore(String type)
+    {
+        type = type.toLowerCase(Locale.ROOT);
+        
+        if (type.equals("sqlite")) { return new SqlProfileStore(plugin); }
+        if (!type.equals("yaml"))
+        {
+            plugin.getLogger().warning("Unknown storage type '" + type + "', using YAML files instead.");
+        }
+        
+        return new YamlProfileStore(plugin);
+    }
+    
+    public ProfileIndex index() { return index; }
+    
+    // Any thread: loads a new store and its index without touching the current ones.
+    public Replacement loadReplacement(String type)
+    {
+        ProfileStore replacement = createStore(type);
+        
+        try
+        {
+            replacement.load();
+            
+            ProfileIndex index = new ProfileIndex();
+            replacement.summaries().values().forEach(index::put);
+            
+            return new Replacement(replacement, index);
+        }
+        catch (RuntimeException e)
+        {
+            replacement.close();
+            throw e;
+        }
+    }
+    
+    // Main thread: saves everything, then holds off further saves until the replacement is swapped in,
+    // so the replacement reads exactly what was saved (whatever changes after that is handed over).
+    public CompletableFuture<SaveReport> saveBeforeReplacing()
+    {
+        CompletableFuture<SaveReport> saved = saveIfUpdated(Concurrency.ASYNC);
+        isSavingSuspended = true;
+        return saved;
+    }
+    
+    public void resumeSaving() { isSavingSuspended = false; }
+    
+    // Main thread: installs a replacement, carrying over everything that changed while it was loading.
+    public void swap(Replacement replacement)
+    {
+        ProfileStore previous = store();
+        
+        // Typed meta first, then all unsaved profile data moves into the new store.
+        profilesByUuid.values().forEach(StaffModeProfile::flush);
+        previous.handOver(replacement.store());
+        
+        this.store = replacement.store();
+        this.index = replacement.index();
+        
+        // Cached profiles may have toggled since the replacement was read.
+        profilesByUuid.values().forEach(profile ->
+        {
+            profile.indexInto(index);
+            profile.clearCachedSnapshots();
+        });
+        
+        // Nothing was written to it since the replacement was loaded, only reads (like handed over
+        // snapshots still loading) might be left, so it's drained and closed off the main thread.
+        plugin.async().run(previous::close);
+        isSavingSuspended = false;
+        
+        plugin.getServer().getOnlinePlayers().forEach(this::refreshStaffMode);
+        plugin.activeListeners().update(!inStaffMode.isEmpty());
+    }
+    
+    public ProfileStore store()
+    {
+        if (store != null) { return store; }
+        throw new IllegalStateException("Staff mode data isn't loaded yet");
+    }
+    
+    // Load a profile in the background ahead of time (safe to call from any thread).
+    public void prefetch(UUID uuid)
+    {
+        @NullOr ProfileStore store = this.store;
+        if (store != null) { store.prefetch(uuid); }
+    }
+    
+    // Drop a prefetched profile for a login that didn't go through.
+    public void discardPrefetch(UUID uuid)
+    {
+        @NullOr ProfileStore store = this.store;
+        if (store != null) { store.discardPrefetch(uuid); }
+    }
+    
+    public CompletableFuture<SaveReport> saveIfUpdated(Concurrency concurrency)
+    {
+        // Reloading: changes stay in memory and are handed over (unless shutting down).
+        if (isSavingSuspended && concurrency == Concurrency.ASYNC)
+        {
+            return CompletableFuture.completedFuture(SaveReport.NONE);
+        }
+        
+        long segment = journal.rotate();
         
-        if (concurrency == Concurrency.SYNC) { task.run(); }
-        else { plugin.async().run(task); }
+        // Write typed profile meta back into the profile data first.
+        profilesByUuid.values().forEach(StaffModeProfile::flush);
+        
+        return store().saveIfUpdated(concurrency).thenApply(report ->
+        {
+            // Journaled toggles are now part of the saved profiles.
+            if (report.isSuccessful()) { journal.discardBefore(segment); }
+            return report;
+        });
+    }
+    
+    public int pendingToggles() { return toggles.pending(); }
+    
+    // Queued toggles are dropped, started ones are finished synchronously.
+    void finishPending()
+    {
+        toggles.cancel();
+        profilesByUuid.values().forEach(StaffModeProfile::completePendingRestore);
     }
     
-    private ConfigurationSection profilesDataSection() { return Sections.getOrCreate(data(), PROFILES_PATH); }
+    void close()
+    {
+        finishPending();
+        if (store != null) { store.close(); }
+        journal.close();
+    }
     
     public void deleteProfile(UUID uuid)
     {
         profilesByUuid.remove(uuid);
-        profilesDataSection().set(uuid.toString(), null);
-        updated(true);
+        lastAccessByUuid.remove(uuid);
+        staffMode(uuid, false);
+        index.remove(uuid);
+        store().delete(uuid);
     }
     
     public Optional<StaffModeProfile> existingProfileByUuid(UUID uuid)
     {
+        // Known to have no profile, skip all other lookups.
+        if (knownNonStaff.contains(uuid))
+        {
+            nonStaffHits++;
+            return Optional.empty();
+        }
+        
         @NullOr StaffModeProfile existing = profilesByUuid.get(uuid);
-        if (existing != null) { return Optional.of(existing); }
         
-        @NullOr ConfigurationSection section = Sections.get(profilesDataSection(), uuid.toString()).orElse(null);
-        if (section == null) { return Optional.empty(); }
+        if (existing != null)
+        {
+            cacheHits++;
+            lastAccessByUuid.put(uuid, System.nanoTime());
+            return Optional.of(existing);
+        }
+        
+        // Only consult the index: profile data itself is loaded once it's actually used.
+        if (!store().contains(uuid)) { return Optional.empty(); }
+        
+        cacheMisses++;
+        return Optional.of(cache(new StaffModeProfile(dependencies, uuid)));
+    }
+    
+    private StaffModeProfile cache(StaffModeProfile profile)
+    {
+        knownNonStaff.remove(profile.uuid());
+        profilesByUuid.put(profile.uuid(), profile);
+        lastAccessByUuid.put(profile.uuid(), System.nanoTime());
+        return profile;
+    }
+    
+    // Player logged off: drop their decoded snapshots, the rest is evicted once idle.
+    // Quitting: anything still being applied has to be finished now.
+    public void leaving(Player player)
+    {
+        UUID uuid = player.getUniqueId();
+        leaving.add(uuid);
+        
+        @NullOr StaffModeProfile profile = profilesByUuid.get(uuid);
+        if (profile != null) { profile.completePendingRestore(); }
+    }
+    
+    public void released(Player player)
+    {
+        UUID uuid = player.getUniqueId();
+        leaving.remove(uuid);
+        staffMode(uuid, false);
+        knownNonStaff.remove(uuid);
+        
+        @NullOr StaffModeProfile profile = profilesByUuid.get(uuid);
+        
+        if (profile == null) { return; }
+        
+        profile.clearCachedSnapshots();
+        lastAccessByUuid.put(uuid, System.nanoTime());
+    }
+    
+    public int evictIdleProfiles()
+    {
+        long now = System.nanoTime();
+        long idleNanos = TimeUnit.MINUTES.toNanos(
+            Math.max(0, plugin.config().getOrDefault(StaffModeConfig.CACHE_IDLE_MINUTES))
+        );
+        int maxOffline = Math.max(0, plugin.config().getOrDefault(StaffModeConfig.CACHE_MAX_OFFLINE_PROFILES));
+        
+        // Least recently used first.
+        List<UUID> offline = profilesByUuid.keySet().stream()
+            .filter(uuid -> plugin.getServer().getPlayer(uuid) == null)
+            .sorted(Comparator.comparingLong(uuid -> lastAccessByUuid.getOrDefault(uuid, 0L)))
+            .toList();
+        
+        int excess = offline.size() - maxOffline;
+        int evicted = 0;
+        
+        for (int i = 0; i < offline.size(); i++)
+        {
+            UUID uuid = offline.get(i);
+            long idle = now - lastAccessByUuid.getOrDefault(uuid, 0L);
+            
+            if (i >= excess && idle < idleNanos) { continue; }
+            if (!store().unload(uuid)) { continue; }
+            
+            profilesByUuid.remove(uuid);
+            lastAccessByUuid.remove(uuid);
+            evicted++;
+        }
         
-        StaffModeProfile profile = new StaffModeProfile(dependencies, uuid);
-        profilesByUuid.put(uuid, profile);
-        return Optional.of(profile);
+        cacheEvictions += evicted;
+        return evicted;
+    }
+    
+    public String cacheSummary()
+    {
+        long lookups = cacheHits + cacheMisses;
+        double hitRate = (lookups == 0) ? 0 : cacheHits * 100.0 / lookups;
+        
+        return String.format(
+            "%d cached, %d hits, %d misses (%.1f%% hit rate), %d evicted, %d non-staff lookups skipped",
+            profilesByUuid.size(), cacheHits, cacheMisses, hitRate, cacheEvictions, nonStaffHits
+        );
+    }
+    
+    private void staffMode(UUID uuid, boolean isStaffMode)
+    {
+        boolean wasAnyoneInStaffMode = !inStaffMode.isEmpty();
+        boolean isChanged = (isStaffMode) ? inStaffMode.add(uuid) : inStaffMode.remove(uuid);
+        
+        if (!isChanged) { return; }
+        
+        @NullOr Player player = plugin.getServer().getPlayer(uuid);
+        if (player != null) { plugin.indicators().update(player, isStaffMode); }
+        
+        boolean isAnyoneInStaffMode = !inStaffMode.isEmpty();
+        
+        // First player entered or last player left.
+        if (wasAnyoneInStaffMode != isAnyoneInStaffMode) { plugin.activeListeners().update(isAnyoneInStaffMode); }
+    }
+    
+    // Re-evaluates whether an online player is in staff mode (permissions and stored mode).
+    public void refreshStaffMode(Player player)
+    {
+        UUID uuid = player.getUniqueId();
+        boolean isStaffMember = Permissions.STAFF_MEMBER.allows(player);
+        
+        // Promoted since last checked.
+        if (isStaffMember) { knownNonStaff.remove(uuid); }
+        
+        boolean isStaffMode = isStaffMember
+            && existingPlayerProfile(player).filter(profile -> profile.mode() == Mode.STAFF).isPresent();
+        
+        staffMode(uuid, isStaffMode);
+    }
+    
+    @Override
+    public boolean isInStaffMode(Player player) { return inStaffMode.contains(player.getUniqueId()); }
+    
+    // Online players with a loaded profile (staff members, or demoted but not yet cleaned up).
+    public List<UUID> onlineProfileUuids()
+    {
+        return profilesByUuid.keySet().stream()
+            .filter(uuid -> plugin.getServer().getPlayer(uuid) != null)
+            .toList();
+    }
+    
+    public Stream<Player> streamPlayersInStaffMode()
+    {
+        return inStaffMode.stream().flatMap(uuid -> Stream.ofNullable(plugin.getServer().getPlayer(uuid)));
     }
     
     public Optional<StaffModeProfile> existingPlayerProfile(Player player)
@@ -133,17 +477,22 @@ public final class StaffModeManager extends YamlDataFile implements StaffManager
         UUID uuid = player.getUniqueId();
         
         Optional<StaffModeProfile> existing = existingProfileByUuid(uuid);
-        if (existing.isPresent()) { return existing; }
+        if (existing.isPresent() || knownNonStaff.contains(uuid)) { return existing; }
         
-        if (Permissions.STAFF_MEMBER.denies(player)) { return Optional.empty(); }
+        if (Permissions.STAFF_MEMBER.denies(player))
+        {
+            knownNonStaff.add(uuid);
+            return Optional.empty();
+        }
         
-        StaffModeProfile profile = new StaffModeProfile(dependencies, uuid);
-        profilesByUuid.put(uuid, profile);
-        return Optional.of(profile);
+        return Optional.of(cache(new StaffModeProfile(dependencies, uuid)));
     }
     
     public StaffModeProfile onlineStaffProfile(Player player)
     {
+        // Explicitly asking for a staff profile, so don't trust a stale negative entry.
+        if (Permissions.STAFF_MEMBER.allows(player)) { knownNonStaff.remove(player.getUniqueId()); }
+        
         return existingPlayerProfile(player).orElseThrow(() ->
             new IllegalArgumentException("Player is not a staff member and has no existing profile: " + player.getName())
         );
@@ -11,8 +11,10 @@ import com.github.zafarkhaja.semver.Version;
 import community.leaf.eventful.bukkit.BukkitEventSource;
 import community.leaf.survival.staffmode.commands.StaffModeCommand;
 import community.leaf.survival.staffmode.configs.StaffModeConfig;
+import community.leaf.survival.staffmode.indicators.StaffModeIndicators;
 import community.leaf.survival.staffmode.listeners.StaffCommandListener;
-import community.leaf.survival.staffmode.listeners.StaffModeInteractionListener;
+import community.leaf.survival.staffmode.listeners.StaffModeActiveListeners;
+import community.leaf.survival.staffmode.listeners.StaffModeNightVision;
 import community.leaf.survival.staffmode.listeners.StaffModeSessionListener;
 import community.leaf.survival.staffmode.snapshots.SnapshotRegistry;
 import community.leaf.tasks.Concurrency;
@@ -43,6 +45,11 @@ public final class StaffModePlugin extends JavaPlugin
     private final StaffModeConfig config;
     private final SnapshotRegistry snapshots;
     private final StaffModeManager staff;
+    private final StaffModeActiveListeners activeListeners;
+    private final StaffModeIndicators indicators;
+    private final StaffModeReload reloads;
+    
+    private @NullOr StaffModeNightVision nightVision;
     
     private @NullOr BukkitAudiences adventure;
     
@@ -57,6 +64,9 @@ public final class StaffModePlugin extends JavaPlugin
         this.config = new StaffModeConfig(this);
         this.snapshots = new SnapshotRegistry(this);
         this.staff = new StaffModeManager(this);
+        this.activeListeners = new StaffModeActiveListeners(this);
+        this.indicators = new StaffModeIndicators(this);
+        this.reloads = new StaffModeReload(this);
     }
     
     private <T> T initialized(@NullOr T thing)
@@ -88,6 +98,14 @@ public final class StaffModePlugin extends JavaPlugin
     @Override
     public StaffModeManager staff() { return staff; }
     
+    public StaffModeActiveListeners activeListeners() { return activeListeners; }
+    
+    public StaffModeIndicators indicators() { return indicators; }
+    
+    public StaffModeReload reloads() { return reloads; }
+    
+    public StaffModeNightVision nightVision() { return initialized(nightVision); }
+    
     @Override
     public void onLoad()
     {
@@ -100,18 +118,15 @@ public final class StaffModePlugin extends JavaPlugin
         getLogger().info("Starting " + getName() + " v" + version);
         
         this.adventure = BukkitAudiences.create(this);
+        this.nightVision = new StaffModeNightVision(this);
         
         config.reload();
+        indicators.reload();
         staff.reload();
         
         events().register(new StaffCommandListener(this));
-        events().register(new StaffModeInteractionListener(this));
         events().register(new StaffModeSessionListener(this));
-        
-        if (PaperLib.isPaper())
-        {
-            events().register(new StaffModeInteractionListener.Paper(this));
-        }
+        events().register(nightVision());
         
         command("staffmode", new StaffModeCommand(this));
         
@@ -131,7 +146,9 @@ public final class StaffModePlugin extends JavaPlugin
             this.adventure = null;
         }
         
+        staff.finishPending();
         staff.saveIfUpdated(Concurrency.SYNC);
+        staff.close();
     }
     
     private void command(String name, CommandExecutor executor)
@@ -16,7 +16,8 @@ import community.leaf.survival.staffmode.events.StaffModeEnableEvent;
 import community.leaf.survival.staffmode.events.StaffModeToggleRequestEvent;
 import community.leaf.survival.staffmode.snapshots.GameplaySnapshot;
 import community.leaf.survival.staffmode.snapshots.SnapshotContext;
-import community.leaf.survival.staffmode.snapshots.SnapshotSource;
+import community.leaf.survival.staffmode.storage.SectionTrees;
+import community.leaf.survival.staffmode.storage.ToggleJournal;
 import community.leaf.survival.staffmode.util.Strings;
 import org.bukkit.GameMode;
 import org.bukkit.configuration.ConfigurationSection;
@@ -29,16 +30,32 @@ import java.util.EnumMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public final class StaffModeProfile implements StaffMember
 {
     public interface Dependencies
     {
-        void updated();
+        void updated(UUID uuid);
         
-        SnapshotSource<GameplaySnapshot> snapshot();
+        GameplaySnapshot.Source snapshot();
         
         ConfigurationSection profileDataSection(UUID uuid);
+        
+        ConfigurationSection modesDataSection(UUID uuid);
+        
+        void captured(UUID uuid, Mode mode, ConfigurationSection snapshot);
+        
+        void restored(UUID uuid, Mode mode, Instant timestamp);
+        
+        void named(UUID uuid, String name);
+        
+        void activeMode(UUID uuid, Mode mode);
+        
+        // Quitting, offline or disabling: there's no later tick to finish applying in.
+        boolean isApplyingImmediately(Player player);
+        
+        CompletableFuture<ToggleSwitch> toggle(StaffModeProfile profile, Mode mode);
     }
     
     private static final YamlValue<String> META_NAME = YamlValue.ofString("meta.name").maybe();
@@ -56,6 +73,32 @@ public final class StaffModeProfile implements StaffMember
     private final Dependencies core;
     private final UUID uuid;
     
+    // Typed copies of the meta, the profile data is only touched when loading and flushing.
+    private boolean isMetaLoaded = false;
+    private boolean isMetaUpdated = false;
+    
+    private @NullOr String name;
+    private @NullOr Mode lastToggledMode;
+    private @NullOr Instant lastToggle;
+    private @NullOr Instant nightVisionEnabled;
+    private @NullOr String spectatorPriorGameMode;
+    
+    private @NullOr Restore restoring;
+    
+    // A restored snapshot that's still being applied, e.g. waiting on the teleport.
+    private static final class Restore
+    {
+        final SnapshotContext context;
+        final @NullOr GameplaySnapshot snapshot;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        
+        Restore(SnapshotContext context, @NullOr GameplaySnapshot snapshot)
+        {
+            this.context = context;
+            this.snapshot = snapshot;
+        }
+    }
+    
     public StaffModeProfile(Dependencies core, UUID uuid)
     {
         this.core = core;
@@ -64,7 +107,53 @@ public final class StaffModeProfile implements StaffMember
     
     private ConfigurationSection profileDataSection() { return core.profileDataSection(uuid); }
     
-    private ConfigurationSection modesDataSection() { return Sections.getOrCreate(profileDataSection(), "modes"); }
+    private ConfigurationSection modesDataSection() { return core.modesDataSection(uuid); }
+    
+    private void loadMeta()
+    {
+        if (isMetaLoaded) { return; }
+        
+        ConfigurationSection data = profileDataSection();
+        
+        name = META_NAME.get(data).orElse(null);
+        lastToggledMode = META_MODE.get(data).flatMap(Mode.adapter()::deserialize).orElse(null);
+        lastToggle = META_TOGGLE_TIMESTAMP.get(data).orElse(null);
+        nightVisionEnabled = NIGHT_VISION_SETTING.get(data).orElse(null);
+        spectatorPriorGameMode = SPECTATOR_SETTING.get(data).orElse(null);
+        
+        isMetaLoaded = true;
+    }
+    
+    private void metaUpdated()
+    {
+        isMetaUpdated = true;
+        core.updated(uuid);
+    }
+    
+    // Write-behind: typed meta is copied into the profile data right before it's saved.
+    void flush()
+    {
+        if (!isMetaUpdated) { return; }
+        
+        ConfigurationSection data = profileDataSection();
+        
+        META_NAME.set(data, name);
+        META_MODE.set(data, Strings.mapOrNull(lastToggledMode, Enum::name));
+        META_TOGGLE_TIMESTAMP.set(data, lastToggle);
+        NIGHT_VISION_SETTING.set(data, nightVisionEnabled);
+        SPECTATOR_SETTING.set(data, spectatorPriorGameMode);
+        
+        isMetaUpdated = false;
+    }
+    
+    // Re-adds the typed meta (possibly newer than what's stored) to a freshly loaded index.
+    void indexInto(ProfileIndex index)
+    {
+        if (!isMetaLoaded) { return; }
+        
+        if (lastToggledMode != null && lastToggle != null) { index.toggled(uuid, lastToggledMode, lastToggle); }
+        if (name != null) { index.named(uuid, name); }
+    }
     
     private void validateReceivedPlayer(Player player)
     {
@@ -84,7 +173,18 @@ public final class StaffModeProfile implements StaffMember
     
     public void updateMetaData()
     {
-        player().map(Player::getName).ifPresent(name -> META_NAME.set(profileDataSection(), name));
+        @NullOr String current = player().map(Player::getName).orElse(null);
+        if (current == null) { return; }
+        
+        loadMeta();
+        
+        if (!current.equals(name))
+        {
+            name = current;
+            metaUpdated();
+        }
+        
+        core.named(uuid, current);
     }
     
     @Override
@@ -93,13 +193,15 @@ public final class StaffModeProfile implements StaffMember
     @Override
     public Optional<Instant> sinceLastToggle()
     {
-        return META_TOGGLE_TIMESTAMP.get(profileDataSection());
+        loadMeta();
+        return Optional.ofNullable(lastToggle);
     }
     
     @Override
     public Optional<Mode> lastToggledMode()
     {
-        return META_MODE.get(profileDataSection()).flatMap(Mode.adapter()::deserialize);
+        loadMeta();
+        return Optional.ofNullable(lastToggledMode);
     }
     
     public GameplaySnapshot forceCaptureSnapshot(SnapshotContext context)
@@ -107,14 +209,10 @@ public final class StaffModeProfile implements StaffMember
         validateReceivedContext(context);
         
         GameplaySnapshot saved = core.snapshot().capture(context);
-        ConfigurationSection data = modesDataSection();
-        
-        // Delete old data first to completely overwrite the snapshot
-        data.set(context.mode().name(), null);
+        @NullOr GameplaySnapshot previous = snapshotsCache.get(context.mode());
         
-        // Save captured snapshot
-        core.snapshot().set(data, context.mode().name(), saved);
-        core.updated();
+        // Save captured snapshot, only rewriting components that actually changed
+        if (core.snapshot().update(modesDataSection(), context.mode().name(), previous, saved)) { core.updated(uuid); }
         
         // Update cached entry
         snapshotsCache.put(context.mode(), saved);
@@ -139,6 +237,8 @@ public final class StaffModeProfile implements StaffMember
         return existing;
     }
     
+    void clearCachedSnapshots() { snapshotsCache.clear(); }
+    
     private Mode effectiveActiveMode(Player player)
     {
         validateReceivedPlayer(player);
@@ -152,37 +252,89 @@ public final class StaffModeProfile implements StaffMember
     }
     
     // Restore mode without capturing snapshot first
-    public void forceRestoreSnapshot(SnapshotContext context)
+    // (completes once the snapshot is fully applied, which might involve loading chunks first)
+    public CompletableFuture<Void> forceRestoreSnapshot(SnapshotContext context)
     {
         validateReceivedContext(context);
         
+        // Whatever was still being applied from a previous restore is finished first.
+        completePendingRestore();
+        
         // Update meta with restored mode
-        ConfigurationSection data = profileDataSection();
+        Instant now = Instant.now();
         
-        META_MODE.set(data, context.mode().name());
-        META_TOGGLE_TIMESTAMP.set(data, Instant.now());
+        loadMeta();
+        lastToggledMode = context.mode();
+        lastToggle = now;
         
-        core.updated();
+        metaUpdated();
+        core.restored(uuid, context.mode(), now);
+        
+        // Protections start right away when entering staff mode, but only end once survival is fully restored.
+        if (context.mode() == Mode.STAFF) { core.activeMode(uuid, Mode.STAFF); }
         
         // Restore toggled mode's gameplay state
         @NullOr GameplaySnapshot restored = snapshot(context.mode()).orElse(null);
         
-        // Apply restored snapshot if it exists
-        if (restored != null) { restored.apply(context); }
         // Otherwise, clear inventory/heal player if toggling staff mode for the first time
-        else if (context.mode() == Mode.STAFF) { GameplaySnapshot.RESPAWN.apply(context); }
+        if (restored == null && context.mode() == Mode.STAFF) { restored = GameplaySnapshot.RESPAWN; }
+        
+        Restore restore = new Restore(context, restored);
+        
+        if (restored == null) { finishRestore(restore, null); }
+        else if (core.isApplyingImmediately(context.player()))
+        {
+            restoring = restore;
+            restored.apply(context);
+            finishRestore(restore, null);
+        }
+        else
+        {
+            restoring = restore;
+            restored.applyAsync(context).whenComplete((applied, error) -> finishRestore(restore, error));
+        }
+        
+        return restore.future;
+    }
+    
+    // Synchronously applies what's left of an in-progress restore (e.g. when quitting or disabling).
+    public void completePendingRestore()
+    {
+        @NullOr Restore restore = restoring;
+        if (restore == null) { return; }
+        
+        if (restore.snapshot != null) { restore.snapshot.applyPending(restore.context); }
+        finishRestore(restore, null);
+    }
+    
+    public boolean isRestoring() { return restoring != null; }
+    
+    // The mode is switched either way (the rest of the snapshot is already applied),
+    // but a failed component (e.g. a refused teleport) fails the returned future.
+    private void finishRestore(Restore restore, @NullOr Throwable error)
+    {
+        if (restore.future.isDone()) { return; }
+        if (restoring == restore) { restoring = null; }
+        
+        Mode mode = restore.context.mode();
+        core.activeMode(uuid, mode);
         
         // Dispatch enable/disable event
-        Event event = switch (context.mode()) {
-            case STAFF -> new StaffModeEnableEvent(this, context);
-            case SURVIVAL -> new StaffModeDisableEvent(this, context);
+        Event event = switch (mode) {
+            case STAFF -> new StaffModeEnableEvent(this, restore.context);
+            case SURVIVAL -> new StaffModeDisableEvent(this, restore.context);
         };
         
-        Events.dispatcher().call(event);
+        try { Events.dispatcher().call(event); }
+        finally
+        {
+            if (error == null) { restore.future.complete(null); }
+            else { restore.future.completeExceptionally(error); }
+        }
     }
     
-    @Override
-    public ToggleSwitch mode(Mode mode)
+    // Toggle phase one: checks the request and captures the current mode.
+    ToggleSwitch prepareToggle(Mode mode)
     {
         @NullOr Player player = player().orElse(null);
         if (player == null) { return ToggleSwitch.FAILURE; }
@@ -198,39 +350,89 @@ public final class StaffModeProfile implements StaffMember
         
         // Capture and save current gameplay state
         forceCaptureSnapshot(new SnapshotContext(player, current));
+        core.captured(uuid, current, Sections.getOrCreate(modesDataSection(), current.name()));
         
-        // Restore and apply snapshot from toggled mode
-        forceRestoreSnapshot(context);
         return ToggleSwitch.SUCCESS;
     }
     
+    // Toggle phase two: restores and applies the snapshot from the toggled mode.
+    CompletableFuture<ToggleSwitch> completeToggle(Mode mode)
+    {
+        // Logged off in between, they simply stay in their captured mode.
+        @NullOr Player player = player().orElse(null);
+        if (player == null) { return CompletableFuture.completedFuture(ToggleSwitch.FAILURE); }
+        
+        return forceRestoreSnapshot(new SnapshotContext(player, mode))
+            .handle((applied, error) -> (error == null) ? ToggleSwitch.SUCCESS : ToggleSwitch.FAILURE);
+    }
+    
+    // The mode is switched right away, though the restored position might still be loading.
+    @Override
+    public ToggleSwitch mode(Mode mode)
+    {
+        ToggleSwitch prepared = prepareToggle(mode);
+        return (prepared == ToggleSwitch.SUCCESS) ? completeToggle(mode).getNow(ToggleSwitch.SUCCESS) : prepared;
+    }
+    
+    // Same as mode(Mode) but spread over the following ticks, see StaffModeToggles.
+    @Override
+    public CompletableFuture<ToggleSwitch> modeAsync(Mode mode) { return core.toggle(this, mode); }
+    
+    // Re-applies a journaled toggle directly to the profile data
+    void replay(ToggleJournal.Entry entry)
+    {
+        switch (entry.type())
+        {
+            case CAPTURE ->
+            {
+                ConfigurationSection modes = modesDataSection();
+                modes.set(entry.mode().name(), null);
+                SectionTrees.paste(modes.createSection(entry.mode().name()), SectionTrees.copy(entry.payload()));
+                snapshotsCache.remove(entry.mode());
+            }
+            case RESTORE ->
+            {
+                loadMeta();
+                lastToggledMode = entry.mode();
+                lastToggle = entry.timestamp();
+                isMetaUpdated = true;
+            }
+        }
+        
+        core.updated(uuid);
+    }
+    
     public boolean nightVision()
     {
-        return profileDataSection().contains(NIGHT_VISION_SETTING.key());
+        loadMeta();
+        return nightVisionEnabled != null;
     }
     
     public void nightVision(boolean enabled)
     {
-        if (enabled) { NIGHT_VISION_SETTING.set(profileDataSection(), Instant.now()); }
-        else { NIGHT_VISION_SETTING.remove(profileDataSection()); }
-        core.updated();
+        loadMeta();
+        nightVisionEnabled = (enabled) ? Instant.now() : null;
+        metaUpdated();
     }
     
     public boolean spectator()
     {
-        return profileDataSection().contains(SPECTATOR_SETTING.key());
+        loadMeta();
+        return spectatorPriorGameMode != null;
     }
     
     public void spectator(@NullOr GameMode priorGameMode)
     {
         if (priorGameMode == GameMode.SPECTATOR) { priorGameMode = null; }
-        SPECTATOR_SETTING.set(profileDataSection(), Strings.mapOrNull(priorGameMode, Enum::name));
-        core.updated();
+        loadMeta();
+        spectatorPriorGameMode = Strings.mapOrNull(priorGameMode, Enum::name);
+        metaUpdated();
     }
     
     public GameMode gameModePriorToSpectator()
     {
-        return SPECTATOR_SETTING.get(profileDataSection())
+        loadMeta();
+        return Optional.ofNullable(spectatorPriorGameMode)
             .flatMap(str -> Attempt.ignoring().get(() -> GameMode.valueOf(str)))
             .filter(mode -> mode != GameMode.SPECTATOR)
             .orElse(GameMode.SURVIVAL);
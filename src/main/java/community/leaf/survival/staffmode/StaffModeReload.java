@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode;
+
+import community.leaf.survival.staffmode.configs.StaffModeConfig;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Reloads without stalling the server: pending data is saved, the config is parsed and the
+// profile store is loaded off the main thread, then everything is swapped in at once on the main thread.
+public final class StaffModeReload
+{
+    public record Report(long saveNanos, long loadNanos, long swapNanos)
+    {
+        private static double millis(long nanos) { return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1); }
+        
+        public String summary()
+        {
+            return String.format(
+                "waiting for saves: %.2fms, background load: %.2fms, main thread swap: %.2fms",
+                millis(saveNanos), millis(loadNanos), millis(swapNanos)
+            );
+        }
+    }
+    
+    private record Loaded(
+        StaffModeConfig.Parsed config,
+        StaffModeManager.Replacement replacement,
+        long saveNanos,
+        long loadNanos
+    ) {}
+    
+    private final StaffModePlugin plugin;
+    
+    private @NullOr CompletableFuture<Report> inProgress = null;
+    
+    StaffModeReload(StaffModePlugin plugin)
+    {
+        this.plugin = plugin;
+    }
+    
+    public boolean isReloading() { return inProgress != null; }
+    
+    // Main thread. Completes on the main thread as well.
+    public CompletableFuture<Report> reload()
+    {
+        @NullOr CompletableFuture<Report> existing = inProgress;
+        if (existing != null) { return existing; }
+        
+        long start = System.nanoTime();
+        
+        // Everything changed up until now is written before the new store reads it.
+        CompletableFuture<Report> future = plugin.staff().saveBeforeReplacing()
+            .thenApplyAsync(saved ->
+            {
+                long loadStart = System.nanoTime();
+                StaffModeConfig.Parsed config = plugin.config().parse();
+                StaffModeManager.Replacement replacement = plugin.staff().loadReplacement(config.storageType());
+                return new Loaded(config, replacement, loadStart - start, System.nanoTime() - loadStart);
+            },
+            plugin.async()::run)
+            .thenApplyAsync(loaded ->
+            {
+                long swapStart = System.nanoTime();
+                
+                try
+                {
+                    plugin.config().install(loaded.config());
+                    plugin.indicators().reload();
+                    plugin.staff().swap(loaded.replacement());
+                }
+                catch (RuntimeException e)
+                {
+                    loaded.replacement().store().close();
+                    throw e;
+                }
+                
+                return new Report(loaded.saveNanos(), loaded.loadNanos(), System.nanoTime() - swapStart);
+            },
+            plugin.sync()::run)
+            .whenCompleteAsync((report, error) ->
+            {
+                plugin.staff().resumeSaving();
+                inProgress = null;
+            },
+            plugin.sync()::run);
+        
+        inProgress = future;
+        return future;
+    }
+}
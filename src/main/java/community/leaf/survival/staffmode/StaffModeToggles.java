@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode;
+
+import community.leaf.survival.staffmode.configs.StaffModeConfig;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+// Queues toggles so that each tick only spends a limited amount of time on them, the rest wait for the next tick.
+// A toggle captures and applies within the same tick (nothing can be moved around in between),
+// only encoding and persisting the captured snapshot happens later, off the main thread.
+final class StaffModeToggles
+{
+    private record Toggle(StaffModeProfile profile, Mode mode, CompletableFuture<ToggleSwitch> future)
+    {
+        Toggle(StaffModeProfile profile, Mode mode) { this(profile, mode, new CompletableFuture<>()); }
+    }
+    
+    private final Deque<Toggle> queue = new ArrayDeque<>();
+    private final Map<UUID, Toggle> pendingByUuid = new HashMap<>();
+    
+    private final StaffModePlugin plugin;
+    
+    private boolean isScheduled = false;
+    
+    StaffModeToggles(StaffModePlugin plugin)
+    {
+        this.plugin = plugin;
+    }
+    
+    CompletableFuture<ToggleSwitch> submit(StaffModeProfile profile, Mode mode)
+    {
+        @NullOr Toggle pending = pendingByUuid.get(profile.uuid());
+        
+        if (pending != null)
+        {
+            // Already switching to that mode: share the result, otherwise refuse until it's done.
+            return (pending.mode == mode) ? pending.future : CompletableFuture.completedFuture(ToggleSwitch.FAILURE);
+        }
+        
+        Toggle toggle = new Toggle(profile, mode);
+        
+        pendingByUuid.put(profile.uuid(), toggle);
+        queue.add(toggle);
+        
+        if (!isScheduled)
+        {
+            plugin.sync().delay(1).ticks().run(this::process);
+            isScheduled = true;
+        }
+        
+        return toggle.future;
+    }
+    
+    int pending() { return pendingByUuid.size(); }
+    
+    // Runs every tick while anything is queued, and stops once the queue is drained.
+    private void process()
+    {
+        
+        long budget = TimeUnit.MILLISECONDS.toNanos(
+            Math.max(0, plugin.config().getOrDefault(StaffModeConfig.TOGGLE_TICK_BUDGET_MILLIS))
+        );
+        
+        long start = System.nanoTime();
+        int processed = 0;
+        
+        while (!queue.isEmpty())
+        {
+            // Always make progress, but leave the rest for later once the budget is spent.
+            if (processed > 0 && System.nanoTime() - start >= budget) { break; }
+            
+            step(queue.poll());
+            processed++;
+        }
+        
+        if (queue.isEmpty()) { isScheduled = false; }
+        else { plugin.sync().delay(1).ticks().run(this::process); }
+    }
+    
+    private void step(Toggle toggle)
+    {
+        try
+        {
+            ToggleSwitch prepared = toggle.profile.prepareToggle(toggle.mode);
+            
+            if (prepared != ToggleSwitch.SUCCESS)
+            {
+                complete(toggle, prepared);
+                return;
+            }
+            
+            // The captured snapshot is encoded and written by the journal in the background.
+            toggle.profile.completeToggle(toggle.mode).whenComplete((result, error) ->
+            {
+                pendingByUuid.remove(toggle.profile.uuid());
+                
+                if (error == null) { toggle.future.complete(result); }
+                else { toggle.future.completeExceptionally(error); }
+            });
+        }
+        catch (RuntimeException e)
+        {
+            pendingByUuid.remove(toggle.profile.uuid());
+            plugin.getLogger().log(Level.WARNING, "Unable to toggle staff mode for: " + toggle.profile.uuid(), e);
+            toggle.future.completeExceptionally(e);
+        }
+    }
+    
+    private void complete(Toggle toggle, ToggleSwitch result)
+    {
+        pendingByUuid.remove(toggle.profile.uuid());
+        toggle.future.complete(result);
+    }
+    
+    // Toggles that haven't been applied yet simply don't happen.
+    void cancel()
+    {
+        queue.clear();
+        pendingByUuid.values().forEach(toggle -> toggle.future.complete(ToggleSwitch.FAILURE));
+        pendingByUuid.clear();
+    }
+}
@@ -12,6 +12,7 @@ import com.rezzedup.util.constants.MatchRules;
 import com.rezzedup.util.constants.annotations.AggregatedResult;
 import community.leaf.survival.staffmode.Mode;
 import community.leaf.survival.staffmode.Permissions;
+import community.leaf.survival.staffmode.ProfileIndex;
 import community.leaf.survival.staffmode.StaffModePlugin;
 import community.leaf.survival.staffmode.StaffModeProfile;
 import community.leaf.survival.staffmode.ToggleSwitch;
@@ -19,6 +20,7 @@ import community.leaf.survival.staffmode.snapshots.SnapshotContext;
 import community.leaf.survival.staffmode.util.NightVision;
 import community.leaf.textchain.adventure.TextChain;
 import community.leaf.textchain.adventure.TextProcessor;
+import community.leaf.textchain.platforms.bukkit.BukkitTextChain;
 import net.kyori.adventure.text.event.ClickEvent;
 import net.kyori.adventure.text.format.NamedTextColor;
 import org.bukkit.Bukkit;
@@ -32,14 +34,20 @@ import org.bukkit.entity.Player;
 import pl.tlinkowski.annotation.basic.NullOr;
 
 import java.lang.reflect.Field;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
 import java.util.function.BiConsumer;
+import java.util.logging.Level;
 
 public class StaffModeCommand implements CommandExecutor, TabCompleter
 {
@@ -61,6 +69,8 @@ public class StaffModeCommand implements CommandExecutor, TabCompleter
     
     public static final Set<String> STAFF_CHECK = Set.of("check");
     
+    private static final int CHECK_PAGE_SIZE = 10;
+    
     // Staff Mode Tools
     
     public static final Set<String> STAFF_RUN_TOOL = Set.of("run", "then");
@@ -170,14 +180,10 @@ public class StaffModeCommand implements CommandExecutor, TabCompleter
             
             if (STAFF_CHECK.contains(choice))
             {
-                if (args.length <= 2)
-                {
-                    plugin.getServer().getOnlinePlayers().stream().map(Player::getName).forEach(suggestions::add);
-                }
-                else
-                {
-                    suggestions.add("<No more arguments>");
-                }
+                // Filters aren't constants here, otherwise they'd be aggregated into the top-level arguments.
+                suggestions.addAll(List.of("staff", "survival", "online"));
+                suggestions.add("<Page>");
+                plugin.getServer().getOnlinePlayers().stream().map(Player::getName).forEach(suggestions::add);
             }
             else if (STAFF_TOOLS.contains(choice))
             {
@@ -260,40 +266,133 @@ public class StaffModeCommand implements CommandExecutor, TabCompleter
         else if (STAFF_TOGGLE_OFF.contains(choice)) { mode = Mode.SURVIVAL; }
         else { mode = profile.mode().toggle(); }
         
-        ToggleSwitch status = profile.mode(mode);
+        // Applied over the next tick(s), the player might've logged off by then.
+        profile.modeAsync(mode).thenAccept(status ->
+        {
+            if (!player.isOnline()) { return; }
+            
+            if (status == ToggleSwitch.ALREADY)
+            {
+                TextChain.using(plugin).chain()
+                    .then("Hey! ")
+                        .color(NamedTextColor.RED).bold().italic()
+                    .then("You're already in " + mode.name().toLowerCase(Locale.ROOT) + " mode!")
+                    .sendToRecipient(player);
+            }
+            else if (status == ToggleSwitch.FAILURE)
+            {
+                error(player, "Could not switch to " + mode.name().toLowerCase(Locale.ROOT) + " mode.");
+            }
+            // Rare case: server admin has the 'staffmode.enabled' permission still
+            // and cannot actually leave staff mode.
+            else if (mode == Mode.SURVIVAL && profile.mode() != Mode.SURVIVAL)
+            {
+                error(
+                    player,
+                    "You still have access to the &c&n" + Permissions.STAFF_MODE_ENABLED.node() + "&r " +
+                    "permission node and cannot leave staff mode until it is removed from your rank."
+                );
+                
+                profile.forceRestoreSnapshot(new SnapshotContext(player, Mode.STAFF));
+            }
+        });
         
-        if (status == ToggleSwitch.ALREADY)
+        return true;
+    }
+    
+    private boolean check(CommandSender sender, String[] args)
+    {
+        if (Permissions.STAFF_MEMBER.denies(sender)) { return error(sender, "You do not have permission to do that."); }
+        
+        @NullOr Mode mode = null;
+        @NullOr String name = null;
+        boolean isOnlineOnly = false;
+        int page = 1;
+        
+        for (int i = 1; i < args.length; i++)
         {
-            TextChain.using(plugin).chain()
-                .then("Hey! ")
-                    .color(NamedTextColor.RED).bold().italic()
-                .then("You're already in " + mode.name().toLowerCase(Locale.ROOT) + " mode!")
-                .sendToRecipient(player);
+            String arg = args[i].toLowerCase(Locale.ROOT);
+            
+            if (arg.equals("staff")) { mode = Mode.STAFF; }
+            else if (arg.equals("survival")) { mode = Mode.SURVIVAL; }
+            else if (arg.equals("online")) { isOnlineOnly = true; }
+            else if (arg.matches("\\d{1,6}")) { page = Integer.parseInt(arg); }
+            else { name = args[i]; }
         }
-        else if (status == ToggleSwitch.FAILURE)
+        
+        ProfileIndex index = plugin.staff().index();
+        
+        if (name != null)
         {
-            error(player, "Could not switch to " + mode.name().toLowerCase(Locale.ROOT) + " mode.");
+            @NullOr Player player = plugin.getServer().getPlayerExact(name);
+            
+            Optional<ProfileIndex.Entry> entry =
+                (player != null) ? index.byUuid(player.getUniqueId()) : index.byName(name);
+            
+            if (entry.isEmpty()) { return error(sender, "No staff mode profile found for: " + name); }
+            
+            checkEntry(TextChain.using(plugin).chain(), entry.get()).sendToRecipient(sender);
+            return true;
         }
-        // Rare case: server admin has the 'staffmode.enabled' permission still
-        // and cannot actually leave staff mode.
-        else if (mode == Mode.SURVIVAL && profile.mode() != Mode.SURVIVAL)
+        
+        @NullOr List<UUID> online = (isOnlineOnly)
+            ? plugin.getServer().getOnlinePlayers().stream().map(Player::getUniqueId).toList()
+            : null;
+        
+        ProfileIndex.Page results = index.query(mode, online, page, CHECK_PAGE_SIZE);
+        
+        // Same filters, next page.
+        StringJoiner next = new StringJoiner(" ").add("/staffmode check");
+        if (mode != null) { next.add(mode.name().toLowerCase(Locale.ROOT)); }
+        if (isOnlineOnly) { next.add("online"); }
+        next.add(String.valueOf(results.page() + 1));
+        
+        BukkitTextChain chain = TextChain.using(plugin).chain()
+            .then("Staff").bold()
+            .then(" (" + results.total() + " found, page " + results.page() + " of " + results.pages() + ")")
+                .color(NamedTextColor.GRAY);
+        
+        if (results.entries().isEmpty())
         {
-            error(
-                player,
-                "You still have access to the &c&n" + Permissions.STAFF_MODE_ENABLED.node() + "&r " +
-                "permission node and cannot leave staff mode until it is removed from your rank."
-            );
-            
-            profile.forceRestoreSnapshot(new SnapshotContext(player, Mode.STAFF));
+            chain.then("\n").then("Nobody matches.").italic().color(NamedTextColor.GRAY);
+        }
+        
+        for (ProfileIndex.Entry entry : results.entries()) { checkEntry(chain.then("\n"), entry); }
+        
+        if (results.page() < results.pages())
+        {
+            chain.then("\n")
+                .then("Next page »").color(NamedTextColor.AQUA)
+                .click(ClickEvent.runCommand(next.toString()));
         }
         
+        chain.sendToRecipient(sender);
         return true;
     }
     
-    private boolean check(CommandSender sender, String[] args)
+    private BukkitTextChain checkEntry(BukkitTextChain chain, ProfileIndex.Entry entry)
     {
-        sender.sendMessage("check");
-        return true;
+        boolean isOnline = plugin.getServer().getPlayer(entry.uuid()) != null;
+        String name = (entry.name() == null) ? entry.uuid().toString() : entry.name();
+        
+        chain.then("• ").color(NamedTextColor.DARK_GRAY)
+            .then(name).color((isOnline) ? NamedTextColor.GREEN : NamedTextColor.GRAY)
+            .then(" " + entry.mode().name().toLowerCase(Locale.ROOT))
+                .color((entry.mode() == Mode.STAFF) ? NamedTextColor.RED : NamedTextColor.WHITE)
+            .then(" toggled ").color(NamedTextColor.DARK_GRAY)
+            .then((entry.toggledAt() == null) ? "never" : since(entry.toggledAt()) + " ago");
+        
+        return chain;
+    }
+    
+    private static String since(Instant instant)
+    {
+        long seconds = Math.max(0, Duration.between(instant, Instant.now()).getSeconds());
+        
+        if (seconds < 60) { return seconds + "s"; }
+        if (seconds < 60 * 60) { return (seconds / 60) + "m"; }
+        if (seconds < 24 * 60 * 60) { return (seconds / (60 * 60)) + "h"; }
+        return (seconds / (24 * 60 * 60)) + "d";
     }
     
     private boolean tools(CommandSender sender, String[] args)
@@ -330,12 +429,14 @@ public class StaffModeCommand implements CommandExecutor, TabCompleter
         if (!tools.isEmpty())
         {
             StaffModeProfile profile = plugin.staff().onlineStaffProfile(player);
-            ToggleSwitch toggle = profile.mode(Mode.STAFF);
-            
-            // Couldn't toggle...
-            if (toggle == ToggleSwitch.FAILURE) { return true; }
             
-            tools.values().forEach(tool -> tool.execute(profile, toggle == ToggleSwitch.SUCCESS));
+            profile.modeAsync(Mode.STAFF).thenAccept(toggle ->
+            {
+                // Couldn't toggle...
+                if (toggle == ToggleSwitch.FAILURE || !player.isOnline()) { return; }
+                
+                tools.values().forEach(tool -> tool.execute(profile, toggle == ToggleSwitch.SUCCESS));
+            });
         }
         
         if (!unknown.isEmpty())
@@ -377,7 +478,7 @@ public class StaffModeCommand implements CommandExecutor, TabCompleter
         
         if (toggle)
         {
-            NightVision.apply(player);
+            plugin.nightVision().start(player);
             
             TextChain.using(plugin).legacy().chain()
                 .then("&oEnabled night vision.")
@@ -385,6 +486,7 @@ public class StaffModeCommand implements CommandExecutor, TabCompleter
         }
         else
         {
+            plugin.nightVision().stop(player);
             NightVision.remove(player);
             
             TextChain.using(plugin).legacy().chain()
@@ -425,13 +527,70 @@ public class StaffModeCommand implements CommandExecutor, TabCompleter
     
     private boolean reload(CommandSender sender)
     {
-        sender.sendMessage("reload");
+        if (Permissions.ADMIN.denies(sender)) { return error(sender, "You do not have permission to do that."); }
+        
+        if (plugin.reloads().isReloading())
+        {
+            return error(sender, "Already reloading, please wait.");
+        }
+        
+        TextChain.using(plugin).chain()
+            .then("Reloading " + plugin.getName() + "...").italic().color(NamedTextColor.GRAY)
+            .sendToRecipient(sender);
+        
+        plugin.reloads().reload().whenComplete((report, error) ->
+        {
+            if (error != null)
+            {
+                Throwable cause = (error instanceof CompletionException && error.getCause() != null)
+                    ? error.getCause()
+                    : error;
+                
+                plugin.getLogger().log(Level.SEVERE, "Unable to reload", cause);
+                error(sender, "Reload failed: " + cause.getMessage());
+                return;
+            }
+            
+            plugin.getLogger().info("Reloaded: " + report.summary());
+            
+            TextChain.using(plugin).chain()
+                .then("Reloaded! ").bold().color(NamedTextColor.GREEN)
+                .then(report.summary()).color(NamedTextColor.GRAY)
+                .sendToRecipient(sender);
+        });
+        
         return true;
     }
     
     private boolean info(CommandSender sender)
     {
-        sender.sendMessage("info");
+        if (Permissions.ADMIN.denies(sender)) { return error(sender, "You do not have permission to do that."); }
+        
+        TextChain.using(plugin).chain()
+            .then(plugin.getName() + " v" + plugin.version()).bold()
+            .then("\n")
+            .then("Storage: ").color(NamedTextColor.GRAY)
+            .then(plugin.staff().store().name())
+            .then("\n")
+            .then("Profiles: ").color(NamedTextColor.GRAY)
+            .then(plugin.staff().store().loaded() + " loaded of " + plugin.staff().store().uuids().size())
+            .then("\n")
+            .then("Profile cache: ").color(NamedTextColor.GRAY)
+            .then(plugin.staff().cacheSummary())
+            .then("\n")
+            .then("Last save: ").color(NamedTextColor.GRAY)
+            .then(plugin.staff().store().lastSave().summary())
+            .then("\n")
+            .then("Profile writes: ").color(NamedTextColor.GRAY)
+            .then(plugin.staff().store().counters().summary())
+            .then("\n")
+            .then("Snapshot decoding: ").color(NamedTextColor.GRAY)
+            .then(plugin.snapshots().decodeSummary())
+            .then("\n")
+            .then("Pending toggles: ").color(NamedTextColor.GRAY)
+            .then(String.valueOf(plugin.staff().pendingToggles()))
+            .sendToRecipient(sender);
+        
         return true;
     }
     
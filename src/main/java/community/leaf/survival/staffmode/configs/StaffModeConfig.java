@@ -14,10 +14,23 @@ import community.leaf.configvalues.bukkit.DefaultYamlValue;
 import community.leaf.configvalues.bukkit.YamlValue;
 import community.leaf.configvalues.bukkit.data.Load;
 import community.leaf.configvalues.bukkit.data.YamlDataFile;
+import community.leaf.configvalues.bukkit.util.Sections;
 import community.leaf.survival.staffmode.StaffModePlugin;
+import community.leaf.survival.staffmode.storage.SectionTrees;
+import community.leaf.survival.staffmode.util.CommandAliases;
 import community.leaf.survival.staffmode.util.Versions;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import pl.tlinkowski.annotation.basic.NullOr;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class StaffModeConfig extends YamlDataFile
 {
@@ -27,10 +40,53 @@ public class StaffModeConfig extends YamlDataFile
     public static final DefaultYamlValue<Boolean> METRICS_ENABLED =
         YamlValue.ofBoolean("plugin.metrics").defaults(true);
     
+    public static final DefaultYamlValue<String> STORAGE_TYPE =
+        YamlValue.ofString("storage.type").defaults("yaml");
+    
+    public static final DefaultYamlValue<Integer> CACHE_IDLE_MINUTES =
+        YamlValue.ofInteger("storage.cache.offline-idle-minutes").defaults(10);
+    
+    public static final DefaultYamlValue<Integer> CACHE_MAX_OFFLINE_PROFILES =
+        YamlValue.ofInteger("storage.cache.max-offline-profiles").defaults(32);
+    
+    public static final DefaultYamlValue<Integer> TOGGLE_TICK_BUDGET_MILLIS =
+        YamlValue.ofInteger("toggles.tick-budget-millis").defaults(5);
+    
+    public static final DefaultYamlValue<Boolean> WORLD_IMPACT_AFFECTS_SPAWNING =
+        YamlValue.ofBoolean("staff-mode.world-impact.affects-spawning").defaults(false);
+    
+    public static final DefaultYamlValue<Integer> WORLD_IMPACT_VIEW_DISTANCE =
+        YamlValue.ofInteger("staff-mode.world-impact.view-distance").defaults(-1);
+    
+    public static final DefaultYamlValue<Boolean> WORLD_IMPACT_GENERATE_CHUNKS =
+        YamlValue.ofBoolean("staff-mode.world-impact.generate-chunks").defaults(false);
+    
+    public static final DefaultYamlValue<String> INDICATOR_TYPE =
+        YamlValue.ofString("indicator.type").defaults("boss-bar");
+    
+    public static final DefaultYamlValue<String> INDICATOR_TAB_LIST_PREFIX =
+        YamlValue.ofString("indicator.tab-list-prefix").defaults("&c&l[STAFF] &r");
+    
     @AggregatedResult
     public static final List<YamlValue<?>> VALUES =
         Aggregates.fromThisClass().constantsOfType(YamlValue.type()).toList();
     
+    public static final String COMMAND_ALIASES_PATH = "commands.aliases";
+    
+    // Empty: aliases are opt-in (the format is described in the config header).
+    public static final Map<String, String> DEFAULT_COMMAND_ALIASES = Map.of();
+    
+    // Detached copy of the file, parsed off the main thread and installed later on the main thread.
+    public record Parsed(Map<String, Object> tree, CommandAliases aliases, String storageType)
+    {
+        public Parsed
+        {
+            tree = Collections.unmodifiableMap(tree);
+        }
+    }
+    
+    private volatile CommandAliases aliases = CommandAliases.EMPTY;
+    
     public StaffModeConfig(StaffModePlugin plugin)
     {
         super(plugin.directory(), "staff-mode.config.yml", Load.LATER);
@@ -49,7 +105,67 @@ public class StaffModeConfig extends YamlDataFile
             headerFromResource("staff-mode.config.header.txt");
             defaultValues(VALUES);
             
+            if (!data().isConfigurationSection(COMMAND_ALIASES_PATH))
+            {
+                data().createSection(COMMAND_ALIASES_PATH, DEFAULT_COMMAND_ALIASES);
+                updated(true);
+            }
+            
+            this.aliases = commandAliasesFrom(data());
+            
             if (isUpdated()) { backupThenSave(plugin.backups(), "v" + existing); }
         });
     }
+    
+    private static CommandAliases commandAliasesFrom(ConfigurationSection root)
+    {
+        Map<String, String> aliases = new LinkedHashMap<>();
+        
+        Sections.get(root, COMMAND_ALIASES_PATH).ifPresent(section ->
+        {
+            for (String alias : section.getKeys(false))
+            {
+                @NullOr String target = section.getString(alias);
+                if (target != null) { aliases.put(alias, target); }
+            }
+        });
+        
+        return new CommandAliases(aliases);
+    }
+    
+    // Worker thread: reads and parses the file without touching the live data,
+    // an invalid file aborts before anything is replaced.
+    public Parsed parse()
+    {
+        Path file = getFilePath();
+        YamlConfiguration parsed = new YamlConfiguration();
+        
+        if (Files.isRegularFile(file))
+        {
+            try { parsed.loadFromString(Files.readString(file)); }
+            catch (IOException | InvalidConfigurationException e)
+            {
+                throw new IllegalStateException("Unable to parse config: " + file, e);
+            }
+        }
+        
+        return new Parsed(
+            SectionTrees.copy(parsed),
+            commandAliasesFrom(parsed),
+            STORAGE_TYPE.get(parsed).orElse(STORAGE_TYPE.getDefaultValue())
+        );
+    }
+    
+    // Main thread: swaps the parsed values in without any file access.
+    // Missing values fall back to their defaults through getOrDefault(), so nothing is written back here.
+    public void install(Parsed parsed)
+    {
+        YamlConfiguration data = data();
+        for (String key : data.getKeys(false)) { data.set(key, null); }
+        
+        SectionTrees.paste(data, parsed.tree());
+        this.aliases = parsed.aliases();
+    }
+    
+    public CommandAliases commandAliases() { return aliases; }
 }
@@ -0,0 +1,34 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.indicators;
+
+import community.leaf.survival.staffmode.StaffModePlugin;
+import net.kyori.adventure.text.Component;
+import org.bukkit.entity.Player;
+
+// Action bars fade after a few seconds, so this one is re-sent just before that happens.
+public final class ActionBarIndicator implements StaffModeIndicator
+{
+    private final StaffModePlugin plugin;
+    private final Component message;
+    
+    public ActionBarIndicator(StaffModePlugin plugin, Component message)
+    {
+        this.plugin = plugin;
+        this.message = message;
+    }
+    
+    @Override
+    public void show(Player player) { plugin.adventure().player(player).sendActionBar(message); }
+    
+    @Override
+    public void hide(Player player) { plugin.adventure().player(player).sendActionBar(Component.empty()); }
+    
+    @Override
+    public boolean isRefreshed() { return true; }
+}
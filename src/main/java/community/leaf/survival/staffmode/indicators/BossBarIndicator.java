@@ -0,0 +1,32 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.indicators;
+
+import community.leaf.survival.staffmode.StaffModePlugin;
+import net.kyori.adventure.bossbar.BossBar;
+import net.kyori.adventure.text.Component;
+import org.bukkit.entity.Player;
+
+// A single shared boss bar: only sent when entering and leaving staff mode.
+public final class BossBarIndicator implements StaffModeIndicator
+{
+    private final StaffModePlugin plugin;
+    private final BossBar bar;
+    
+    public BossBarIndicator(StaffModePlugin plugin, Component title)
+    {
+        this.plugin = plugin;
+        this.bar = BossBar.bossBar(title, BossBar.MAX_PROGRESS, BossBar.Color.RED, BossBar.Overlay.PROGRESS);
+    }
+    
+    @Override
+    public void show(Player player) { plugin.adventure().player(player).showBossBar(bar); }
+    
+    @Override
+    public void hide(Player player) { plugin.adventure().player(player).hideBossBar(bar); }
+}
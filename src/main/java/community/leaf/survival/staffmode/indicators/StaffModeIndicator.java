@@ -0,0 +1,32 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.indicators;
+
+import org.bukkit.entity.Player;
+
+// Lets players know that they're in staff mode.
+public interface StaffModeIndicator
+{
+    StaffModeIndicator NONE = new StaffModeIndicator()
+    {
+        @Override
+        public void show(Player player) {}
+        
+        @Override
+        public void hide(Player player) {}
+    };
+    
+    void show(Player player);
+    
+    void hide(Player player);
+    
+    // Whether the indicator fades and must be periodically re-sent.
+    default boolean isRefreshed() { return false; }
+    
+    default void refresh(Player player) { show(player); }
+}
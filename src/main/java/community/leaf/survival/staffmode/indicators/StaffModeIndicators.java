@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.indicators;
+
+import community.leaf.survival.staffmode.StaffModePlugin;
+import community.leaf.survival.staffmode.configs.StaffModeConfig;
+import community.leaf.textchain.adventure.TextChain;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.entity.Player;
+
+import java.util.Locale;
+
+public final class StaffModeIndicators
+{
+    // Action bars fade after about 3 seconds.
+    private static final int REFRESH_TICKS = 40;
+    
+    private final StaffModePlugin plugin;
+    
+    private StaffModeIndicator indicator = StaffModeIndicator.NONE;
+    private boolean isScheduled = false;
+    
+    public StaffModeIndicators(StaffModePlugin plugin)
+    {
+        this.plugin = plugin;
+    }
+    
+    public StaffModeIndicator indicator() { return indicator; }
+    
+    public void reload()
+    {
+        StaffModeIndicator replacement = create(plugin.config().getOrDefault(StaffModeConfig.INDICATOR_TYPE));
+        
+        plugin.staff().streamPlayersInStaffMode().forEach(player ->
+        {
+            indicator.hide(player);
+            replacement.show(player);
+        });
+        
+        this.indicator = replacement;
+        
+        if (isScheduled) { return; }
+        
+        // Only ever iterates players in staff mode, and only if the indicator needs it.
+        plugin.sync().every(REFRESH_TICKS).ticks().run(() ->
+        {
+            StaffModeIndicator current = indicator;
+            if (current.isRefreshed()) { plugin.staff().streamPlayersInStaffMode().forEach(current::refresh); }
+        });
+        
+        isScheduled = true;
+    }
+    
+    private StaffModeIndicator create(String type)
+    {
+        Component title = TextChain.using(plugin).chain().then("STAFF MODE.").bold().color(NamedTextColor.RED).asComponent();
+        
+        return switch (type.toLowerCase(Locale.ROOT))
+        {
+            case "boss-bar", "bossbar" -> new BossBarIndicator(plugin, title);
+            case "tab-list", "tablist" -> new TabListIndicator(plugin.config().getOrDefault(StaffModeConfig.INDICATOR_TAB_LIST_PREFIX));
+            case "action-bar", "actionbar" -> new ActionBarIndicator(plugin, title);
+            case "none" -> StaffModeIndicator.NONE;
+            default ->
+            {
+                plugin.getLogger().warning("Unknown staff mode indicator '" + type + "', using boss-bar instead.");
+                yield new BossBarIndicator(plugin, title);
+            }
+        };
+    }
+    
+    public void update(Player player, boolean isStaffMode)
+    {
+        if (isStaffMode) { indicator.show(player); }
+        else { indicator.hide(player); }
+    }
+}
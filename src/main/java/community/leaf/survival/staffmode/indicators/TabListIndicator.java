@@ -0,0 +1,28 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.indicators;
+
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+
+// Prefixes the player's name in the tab list, which the client keeps until it's changed.
+public final class TabListIndicator implements StaffModeIndicator
+{
+    private final String prefix;
+    
+    public TabListIndicator(String prefix)
+    {
+        this.prefix = ChatColor.translateAlternateColorCodes('&', prefix);
+    }
+    
+    @Override
+    public void show(Player player) { player.setPlayerListName(prefix + player.getName()); }
+    
+    @Override
+    public void hide(Player player) { player.setPlayerListName(null); }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.listeners;
+
+import community.leaf.survival.staffmode.StaffMember;
+import community.leaf.survival.staffmode.StaffModePlugin;
+import community.leaf.tasks.Concurrency;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.UUID;
+
+// Periodically captures online staff, each at their own point within the interval
+// (derived from their uuid) rather than everyone in the same tick. Saves once per round.
+final class PeriodicCapture
+{
+    private static final int INTERVAL_TICKS = 2 * 60 * 20;
+    
+    private static final int MAX_CAPTURES_PER_TICK = 2;
+    
+    // The toggle itself just captured and restored their snapshots.
+    private static final Duration RECENT_TOGGLE = Duration.ofSeconds(30);
+    
+    private record Scheduled(UUID uuid, int phase) {}
+    
+    private final Deque<Scheduled> round = new ArrayDeque<>();
+    
+    private final StaffModePlugin plugin;
+    
+    private int tick = 0;
+    
+    PeriodicCapture(StaffModePlugin plugin)
+    {
+        this.plugin = plugin;
+        
+        plugin.sync().every(1).ticks().run(this::tick);
+    }
+    
+    private static int phase(UUID uuid) { return Math.floorMod(uuid.hashCode(), INTERVAL_TICKS); }
+    
+    private void startRound()
+    {
+        round.clear();
+        
+        plugin.staff().streamOnlineStaffMembers()
+            .map(member -> new Scheduled(member.uuid(), phase(member.uuid())))
+            .sorted(Comparator.comparingInt(Scheduled::phase))
+            .forEach(round::add);
+    }
+    
+    private void tick()
+    {
+        if (tick == 0) { startRound(); }
+        
+        for (int captured = 0; captured < MAX_CAPTURES_PER_TICK; )
+        {
+            @NullOr Scheduled next = round.peek();
+            if (next == null || next.phase() > tick) { break; }
+            
+            round.poll();
+            if (capture(next.uuid())) { captured++; }
+        }
+        
+        if (++tick < INTERVAL_TICKS) { return; }
+        
+        // Round complete: anyone left over (only with a huge amount of staff) waits for the next one.
+        tick = 0;
+        plugin.staff().saveIfUpdated(Concurrency.ASYNC);
+    }
+    
+    private boolean capture(UUID uuid)
+    {
+        @NullOr StaffMember member = plugin.staff().member(uuid).filter(m -> m.player().isPresent()).orElse(null);
+        if (member == null) { return false; }
+        
+        boolean isRecentlyToggled = member.sinceLastToggle()
+            .filter(toggled -> toggled.isAfter(Instant.now().minus(RECENT_TOGGLE)))
+            .isPresent();
+        
+        if (isRecentlyToggled) { return false; }
+        
+        member.capture();
+        return true;
+    }
+}
@@ -13,11 +13,11 @@ import community.leaf.eventful.bukkit.annotations.CancelledEvents;
 import community.leaf.eventful.bukkit.annotations.EventListener;
 import community.leaf.survival.staffmode.Permissions;
 import community.leaf.survival.staffmode.StaffModePlugin;
-import org.bukkit.entity.Player;
+import community.leaf.survival.staffmode.util.CommandAliases;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import pl.tlinkowski.annotation.basic.NullOr;
 
-import java.util.List;
 import java.util.regex.Pattern;
 
 public class StaffCommandListener implements Listener
@@ -31,26 +31,27 @@ public class StaffCommandListener implements Listener
         this.plugin = plugin;
     }
     
-    private static String reconstruct(String command, List<String> args)
+    private static boolean isEasterEgg(String message, int end)
     {
-        return "/" + ((args.isEmpty()) ? command : command + " " + String.join(" ", args));
+        // Every easter egg alias starts with "sm", so don't bother with regex otherwise.
+        return end - 1 >= 2
+            && message.regionMatches(true, 1, "sm", 0, 2)
+            && EASTER_EGG_ALIAS.matcher(message).region(1, end).matches();
     }
     
     @EventListener(ListenerOrder.FIRST)
     @CancelledEvents(CancellationPolicy.REJECT)
     public void onCommand(PlayerCommandPreprocessEvent event)
     {
-        Player player = event.getPlayer();
-        boolean isStaffMember = Permissions.STAFF_MEMBER.allows(player);
+        String message = event.getMessage();
+        int end = CommandAliases.commandEnd(message);
         
-        List<String> parts = List.of(event.getMessage().split("\s+"));
-        String command = parts.get(0).replaceFirst("/", "");
-        List<String> args = (parts.size() > 1) ? parts.subList(1, parts.size()) : List.of();
+        @NullOr String rewritten = plugin.config().commandAliases().rewrite(message, end);
+        if (rewritten == null && isEasterEgg(message, end)) { rewritten = "/staffmode" + message.substring(end); }
         
-        if (isStaffMember && EASTER_EGG_ALIAS.matcher(command).matches())
-        {
-            event.setMessage(reconstruct("staffmode", args));
-            return;
-        }
+        // Only check permissions once there's actually something to rewrite.
+        if (rewritten == null || Permissions.STAFF_MEMBER.denies(event.getPlayer())) { return; }
+        
+        event.setMessage(rewritten);
     }
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.listeners;
+
+import community.leaf.survival.staffmode.StaffModePlugin;
+import io.papermc.lib.PaperLib;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Listeners for high-frequency events are only registered while someone is actually in staff mode.
+public final class StaffModeActiveListeners
+{
+    // Matches the post-toggle damage cooldown, which still needs the listeners.
+    private static final int GRACE_SECONDS = 3;
+    
+    private final StaffModePlugin plugin;
+    private final List<Listener> listeners = new ArrayList<>();
+    
+    private boolean isRegistered = false;
+    private int generation = 0;
+    
+    public StaffModeActiveListeners(StaffModePlugin plugin)
+    {
+        this.plugin = plugin;
+        
+        listeners.add(new StaffModeInteractionListener(plugin));
+        listeners.add(new StaffModeChunkGenerationListener(plugin));
+        listeners.add(new StaffModeItemGuardListener(plugin));
+        
+        if (PaperLib.isPaper())
+        {
+            listeners.add(new StaffModeInteractionListener.Paper(plugin));
+            listeners.add(new StaffModeItemGuardListener.Paper(plugin));
+        }
+    }
+    
+    public boolean isRegistered() { return isRegistered; }
+    
+    public void update(boolean isAnyoneInStaffMode)
+    {
+        // Invalidates any pending unregistration.
+        int current = ++generation;
+        
+        if (isAnyoneInStaffMode)
+        {
+            if (!isRegistered)
+            {
+                listeners.forEach(plugin.events()::register);
+                isRegistered = true;
+            }
+            return;
+        }
+        
+        if (!isRegistered) { return; }
+        
+        plugin.sync().delay(GRACE_SECONDS).seconds().run(() ->
+        {
+            if (current != generation || !isRegistered) { return; }
+            
+            listeners.forEach(HandlerList::unregisterAll);
+            isRegistered = false;
+        });
+    }
+}
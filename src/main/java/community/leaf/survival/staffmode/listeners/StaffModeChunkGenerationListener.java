@@ -0,0 +1,207 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.listeners;
+
+import community.leaf.eventful.bukkit.CancellationPolicy;
+import community.leaf.eventful.bukkit.ListenerOrder;
+import community.leaf.eventful.bukkit.annotations.CancelledEvents;
+import community.leaf.eventful.bukkit.annotations.EventListener;
+import community.leaf.survival.staffmode.StaffModePlugin;
+import community.leaf.survival.staffmode.StaffModeProfile;
+import community.leaf.survival.staffmode.configs.StaffModeConfig;
+import community.leaf.textchain.adventure.TextChain;
+import io.papermc.lib.PaperLib;
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Staff flying off to the edge of the world shouldn't generate brand-new chunks.
+public class StaffModeChunkGenerationListener implements Listener
+{
+    private static final int MAX_VIEW_DISTANCE = 32;
+    
+    // Unloaded chunks that aren't known yet are looked up on disk, but only this many per move/teleport.
+    private static final int MAX_LOOKUPS_PER_EVENT = 8;
+    
+    private static final int MAX_KNOWN_CHUNKS_PER_WORLD = 65536;
+    
+    private final StaffModePlugin plugin;
+    
+    // Chunks known to be generated (they never stop being generated), by world name.
+    private final Map<String, Set<Long>> generatedByWorld = new HashMap<>();
+    
+    public StaffModeChunkGenerationListener(StaffModePlugin plugin)
+    {
+        this.plugin = plugin;
+    }
+    
+    private static boolean isSameChunk(Location from, Location to)
+    {
+        return from.getWorld() == to.getWorld()
+            && (from.getBlockX() >> 4) == (to.getBlockX() >> 4)
+            && (from.getBlockZ() >> 4) == (to.getBlockZ() >> 4);
+    }
+    
+    private static long key(int x, int z) { return ((long) x << 32) | (z & 0xFFFFFFFFL); }
+    
+    private Set<Long> generated(World world)
+    {
+        return generatedByWorld.computeIfAbsent(world.getName(), name -> Collections.newSetFromMap(
+            new LinkedHashMap<>(1024, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest)
+                {
+                    return size() > MAX_KNOWN_CHUNKS_PER_WORLD;
+                }
+            }
+        ));
+    }
+    
+    private int viewDistance(Player player)
+    {
+        int distance = (PaperLib.isPaper()) ? player.getViewDistance() : plugin.getServer().getViewDistance();
+        return Math.max(0, Math.min(distance, MAX_VIEW_DISTANCE));
+    }
+    
+    // Tracks how many unknown chunks one event may still look up on disk.
+    private final class Check
+    {
+        final World world;
+        final Set<Long> generated;
+        int lookups = MAX_LOOKUPS_PER_EVENT;
+        
+        Check(World world)
+        {
+            this.world = world;
+            this.generated = generated(world);
+        }
+        
+        // Loaded and previously seen chunks cost nothing, only a few unknown ones are read from disk
+        // (any beyond that are given the benefit of the doubt, they're checked again on the next move).
+        boolean isUngenerated(int x, int z)
+        {
+            if (world.isChunkLoaded(x, z) || generated.contains(key(x, z))) { return false; }
+            if (lookups <= 0) { return false; }
+            
+            lookups--;
+            if (!world.isChunkGenerated(x, z)) { return true; }
+            
+            generated.add(key(x, z));
+            return false;
+        }
+        
+        // Any chunk in the square around (centerX, centerZ) skipping the ones within range of the previous center.
+        boolean anyUngenerated(int centerX, int centerZ, int radius, int previousX, int previousZ, boolean hasPrevious)
+        {
+            for (int x = centerX - radius; x <= centerX + radius; x++)
+            {
+                boolean isColumnInView = hasPrevious && Math.abs(x - previousX) <= radius;
+                
+                if (!isColumnInView)
+                {
+                    // Newly exposed column, all of it.
+                    for (int z = centerZ - radius; z <= centerZ + radius; z++)
+                    {
+                        if (isUngenerated(x, z)) { return true; }
+                    }
+                    continue;
+                }
+                
+                // Only the newly exposed rows of a column that was already (partly) in view.
+                for (int z = centerZ - radius; z < previousZ - radius; z++)
+                {
+                    if (isUngenerated(x, z)) { return true; }
+                }
+                for (int z = Math.max(centerZ - radius, previousZ + radius + 1); z <= centerZ + radius; z++)
+                {
+                    if (isUngenerated(x, z)) { return true; }
+                }
+            }
+            
+            return false;
+        }
+    }
+    
+    // Whether any chunk that comes into view at the destination hasn't been generated yet.
+    private boolean revealsUngeneratedChunks(Player player, Location from, Location to, World world)
+    {
+        int toX = to.getBlockX() >> 4;
+        int toZ = to.getBlockZ() >> 4;
+        
+        Check check = new Check(world);
+        
+        // The destination itself first, that one's always looked up.
+        if (check.isUngenerated(toX, toZ)) { return true; }
+        
+        return check.anyUngenerated(
+            toX, toZ, viewDistance(player), from.getBlockX() >> 4, from.getBlockZ() >> 4, from.getWorld() == world
+        );
+    }
+    
+    private boolean refuses(Player player, Location from, @NullOr Location to)
+    {
+        // Everyone else only pays for this lookup.
+        if (!plugin.staff().isInStaffMode(player)) { return false; }
+        
+        if (to == null || isSameChunk(from, to)) { return false; }
+        
+        @NullOr World world = to.getWorld();
+        if (world == null) { return false; }
+        
+        if (plugin.config().getOrDefault(StaffModeConfig.WORLD_IMPACT_GENERATE_CHUNKS)) { return false; }
+        if (!revealsUngeneratedChunks(player, from, to, world)) { return false; }
+        
+        plugin.adventure().player(player).sendActionBar(
+            TextChain.using(plugin).chain()
+                .then("Staff mode can't generate new chunks.").color(NamedTextColor.RED)
+                .asComponent()
+        );
+        
+        return true;
+    }
+    
+    @EventListener(ListenerOrder.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event)
+    {
+        Chunk chunk = event.getChunk();
+        generated(event.getWorld()).add(key(chunk.getX(), chunk.getZ()));
+    }
+    
+    @EventListener(ListenerOrder.EARLY)
+    @CancelledEvents(CancellationPolicy.REJECT)
+    public void onMove(PlayerMoveEvent event)
+    {
+        if (refuses(event.getPlayer(), event.getFrom(), event.getTo())) { event.setCancelled(true); }
+    }
+    
+    @EventListener(ListenerOrder.EARLY)
+    @CancelledEvents(CancellationPolicy.REJECT)
+    public void onTeleport(PlayerTeleportEvent event)
+    {
+        // Restoring a snapshot (e.g. back to their survival position) is never refused.
+        Player player = event.getPlayer();
+        if (!plugin.staff().isInStaffMode(player)) { return; }
+        if (plugin.staff().existingPlayerProfile(player).filter(StaffModeProfile::isRestoring).isPresent()) { return; }
+        
+        if (refuses(player, event.getFrom(), event.getTo())) { event.setCancelled(true); }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.listeners;
+
+import community.leaf.eventful.bukkit.ListenerOrder;
+import community.leaf.eventful.bukkit.annotations.EventListener;
+import community.leaf.survival.staffmode.StaffModePlugin;
+import org.bukkit.entity.HumanEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityPickupItemEvent;
+import org.bukkit.event.inventory.InventoryAction;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.event.inventory.InventoryType;
+import org.bukkit.event.player.PlayerAttemptPickupItemEvent;
+import org.bukkit.event.player.PlayerDropItemEvent;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryView;
+
+// Keeps items from leaking between modes: staff can look inside containers, but not take anything.
+// Pickup events fire constantly, so everything starts with the staff mode set lookup.
+public class StaffModeItemGuardListener implements Listener
+{
+    private final StaffModePlugin plugin;
+    
+    public StaffModeItemGuardListener(StaffModePlugin plugin)
+    {
+        this.plugin = plugin;
+    }
+    
+    private boolean isInStaffMode(HumanEntity entity)
+    {
+        return entity instanceof Player player && plugin.staff().isInStaffMode(player);
+    }
+    
+    // The player's own inventory (and crafting grid) is the only thing open.
+    private static boolean isOwnInventory(InventoryView view)
+    {
+        InventoryType type = view.getTopInventory().getType();
+        return type == InventoryType.CRAFTING || type == InventoryType.CREATIVE;
+    }
+    
+    @EventListener(ListenerOrder.FIRST)
+    public void onPickup(EntityPickupItemEvent event)
+    {
+        if (event.getEntity() instanceof Player player && plugin.staff().isInStaffMode(player))
+        {
+            event.setCancelled(true);
+        }
+    }
+    
+    @EventListener(ListenerOrder.FIRST)
+    public void onDrop(PlayerDropItemEvent event)
+    {
+        if (plugin.staff().isInStaffMode(event.getPlayer())) { event.setCancelled(true); }
+    }
+    
+    @EventListener(ListenerOrder.FIRST)
+    public void onInventoryClick(InventoryClickEvent event)
+    {
+        if (!isInStaffMode(event.getWhoClicked())) { return; }
+        
+        InventoryView view = event.getView();
+        if (isOwnInventory(view)) { return; }
+        
+        Inventory top = view.getTopInventory();
+        InventoryAction action = event.getAction();
+        
+        boolean isTransfer = top.equals(event.getClickedInventory())
+            || action == InventoryAction.MOVE_TO_OTHER_INVENTORY
+            || action == InventoryAction.COLLECT_TO_CURSOR;
+        
+        if (isTransfer) { event.setCancelled(true); }
+    }
+    
+    @EventListener(ListenerOrder.FIRST)
+    public void onInventoryDrag(InventoryDragEvent event)
+    {
+        if (!isInStaffMode(event.getWhoClicked())) { return; }
+        
+        InventoryView view = event.getView();
+        if (isOwnInventory(view)) { return; }
+        
+        // Raw slots below the top inventory's size belong to the container.
+        int containerSize = view.getTopInventory().getSize();
+        
+        if (event.getRawSlots().stream().anyMatch(slot -> slot < containerSize)) { event.setCancelled(true); }
+    }
+    
+    public static class Paper implements Listener
+    {
+        private final StaffModePlugin plugin;
+        
+        public Paper(StaffModePlugin plugin)
+        {
+            this.plugin = plugin;
+        }
+        
+        // Fired every tick for every nearby item, cancelling here also skips the pickup event entirely.
+        @EventListener(ListenerOrder.FIRST)
+        public void onAttemptPickup(PlayerAttemptPickupItemEvent event)
+        {
+            if (!plugin.staff().isInStaffMode(event.getPlayer())) { return; }
+            
+            event.setFlyAtPlayer(false);
+            event.setCancelled(true);
+        }
+    }
+}
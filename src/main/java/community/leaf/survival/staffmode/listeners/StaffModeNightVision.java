@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.listeners;
+
+import community.leaf.eventful.bukkit.ListenerOrder;
+import community.leaf.eventful.bukkit.annotations.EventListener;
+import community.leaf.survival.staffmode.Mode;
+import community.leaf.survival.staffmode.StaffModePlugin;
+import community.leaf.survival.staffmode.StaffModeProfile;
+import community.leaf.survival.staffmode.events.StaffModeDisableEvent;
+import community.leaf.survival.staffmode.util.NightVision;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityPotionEffectEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.potion.PotionEffectType;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Keeps night vision active for staff without re-adding the effect every second:
+// it's only reapplied shortly before it expires, or right after something removes it.
+public final class StaffModeNightVision implements Listener
+{
+    private static final long REAPPLY_BEFORE_EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    
+    private record Scheduled(UUID uuid, long reapplyAt) {}
+    
+    private final PriorityQueue<Scheduled> queue = new PriorityQueue<>(Comparator.comparingLong(Scheduled::reapplyAt));
+    
+    // Latest entry per player, anything else still in the queue is stale.
+    private final Map<UUID, Scheduled> scheduledByUuid = new HashMap<>();
+    
+    private final StaffModePlugin plugin;
+    
+    public StaffModeNightVision(StaffModePlugin plugin)
+    {
+        this.plugin = plugin;
+        
+        // Peeks at the earliest entry, nothing else unless it's due.
+        plugin.sync().every(1).seconds().run(this::reapplyDue);
+    }
+    
+    public void start(Player player)
+    {
+        NightVision.apply(player);
+        
+        // Server lag only makes the effect last longer (in real time), so scheduling by the clock is safe.
+        long duration = TimeUnit.SECONDS.toMillis(NightVision.EFFECT.getDuration() / 20);
+        Scheduled scheduled = new Scheduled(player.getUniqueId(), System.currentTimeMillis() + duration - REAPPLY_BEFORE_EXPIRY_MILLIS);
+        
+        scheduledByUuid.put(scheduled.uuid(), scheduled);
+        queue.add(scheduled);
+    }
+    
+    public void stop(Player player)
+    {
+        scheduledByUuid.remove(player.getUniqueId());
+    }
+    
+    public boolean isActive(Player player) { return scheduledByUuid.containsKey(player.getUniqueId()); }
+    
+    private void reapplyDue()
+    {
+        long now = System.currentTimeMillis();
+        
+        for (@NullOr Scheduled next = queue.peek(); next != null && next.reapplyAt() <= now; next = queue.peek())
+        {
+            queue.poll();
+            if (!next.equals(scheduledByUuid.get(next.uuid()))) { continue; }
+            
+            scheduledByUuid.remove(next.uuid());
+            
+            @NullOr Player player = plugin.getServer().getPlayer(next.uuid());
+            if (player != null && isWanted(player)) { start(player); }
+        }
+    }
+    
+    // Not while a restore is still being applied: leaving staff mode keeps the protections until it's done,
+    // but the restored survival effects shouldn't get night vision back in the meantime.
+    private boolean isWanted(Player player)
+    {
+        return plugin.staff().isInStaffMode(player)
+            && plugin.staff().existingPlayerProfile(player)
+                .filter(profile -> profile.mode() == Mode.STAFF && !profile.isRestoring())
+                .filter(StaffModeProfile::nightVision)
+                .isPresent();
+    }
+    
+    @EventListener(ListenerOrder.MONITOR)
+    public void onPotionEffectRemoved(EntityPotionEffectEvent event)
+    {
+        if (!(event.getEntity() instanceof Player player)) { return; }
+        if (!PotionEffectType.NIGHT_VISION.equals(event.getModifiedType())) { return; }
+        if (event.getAction() != EntityPotionEffectEvent.Action.REMOVED && event.getAction() != EntityPotionEffectEvent.Action.CLEARED) { return; }
+        if (event.isCancelled() || !isActive(player)) { return; }
+        
+        // Milk, expiry, another plugin... restore it once the removal is done.
+        plugin.sync().run(() -> { if (player.isOnline() && !player.isDead() && isWanted(player)) { start(player); } });
+    }
+    
+    @EventListener(ListenerOrder.MONITOR)
+    public void onRespawn(PlayerRespawnEvent event)
+    {
+        Player player = event.getPlayer();
+        if (!isActive(player)) { return; }
+        
+        plugin.sync().run(() -> { if (player.isOnline() && isWanted(player)) { start(player); } });
+    }
+    
+    @EventListener
+    public void onStaffModeDisable(StaffModeDisableEvent event)
+    {
+        stop(event.player());
+        NightVision.removeApplied(event.player());
+    }
+    
+    @EventListener
+    public void onQuit(PlayerQuitEvent event)
+    {
+        stop(event.getPlayer());
+    }
+}
@@ -8,66 +8,59 @@
 package community.leaf.survival.staffmode.listeners;
 
 import com.rezzedup.util.constants.types.Cast;
+import community.leaf.eventful.bukkit.ListenerOrder;
 import community.leaf.eventful.bukkit.annotations.EventListener;
 import community.leaf.survival.staffmode.Mode;
 import community.leaf.survival.staffmode.Permissions;
-import community.leaf.survival.staffmode.StaffMember;
 import community.leaf.survival.staffmode.StaffModePlugin;
 import community.leaf.survival.staffmode.StaffModeProfile;
+import community.leaf.survival.staffmode.configs.StaffModeConfig;
 import community.leaf.survival.staffmode.events.StaffModeDisableEvent;
 import community.leaf.survival.staffmode.events.StaffModeEnableEvent;
 import community.leaf.survival.staffmode.snapshots.SnapshotContext;
 import community.leaf.survival.staffmode.snapshots.defaults.PotionEffectsSnapshot;
 import community.leaf.survival.staffmode.snapshots.defaults.StatsSnapshot;
-import community.leaf.survival.staffmode.util.NightVision;
-import community.leaf.tasks.Concurrency;
-import community.leaf.textchain.adventure.TextChain;
-import community.leaf.textchain.platforms.bukkit.BukkitTextChain;
-import net.kyori.adventure.text.format.NamedTextColor;
+import io.papermc.lib.PaperLib;
 import org.bukkit.GameMode;
 import org.bukkit.entity.Mob;
 import org.bukkit.entity.Player;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerCommandSendEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
 
 public class StaffModeSessionListener implements Listener
 {
+    private static final int SWEEP_INTERVAL_TICKS = 5;
+    
+    private final Set<UUID> pendingPermissionChecks = new HashSet<>();
+    private final Deque<UUID> sweep = new ArrayDeque<>();
+    
     private final StaffModePlugin plugin;
     
     public StaffModeSessionListener(StaffModePlugin plugin)
     {
         this.plugin = plugin;
         
-        plugin.sync().every(1).seconds().run(() ->
-        {
-            for (Player player : plugin.getServer().getOnlinePlayers())
-            {
-                // Check for demotions...
-                checkForDemotion(player);
-                if (!plugin.staff().isInStaffMode(player)) { continue; }
-                
-                StaffModeProfile profile = plugin.staff().onlineStaffProfile(player);
-                // Replenish night vision...
-                if (profile.nightVision()) { NightVision.apply(player); }
-            }
-        });
+        // The guaranteed path for picking up permission changes (the events below are only hints):
+        // check one online player with a profile at a time, spread out over ticks.
+        plugin.sync().every(SWEEP_INTERVAL_TICKS).ticks().run(this::sweepNext);
         
-        // Capture snapshots and save data to disk
-        plugin.sync().every(2).minutes().run(() -> {
-            plugin.staff().streamOnlineStaffMembers().forEach(StaffMember::capture);
-            plugin.staff().saveIfUpdated(Concurrency.ASYNC);
-        });
+        // Evict offline profiles that haven't been used in a while
+        plugin.sync().every(1).minutes().run(plugin.staff()::evictIdleProfiles);
         
-        BukkitTextChain notification =
-            TextChain.using(plugin).chain().then("STAFF MODE.").bold().color(NamedTextColor.RED);
-        
-        plugin.sync().every(2).ticks().run(() -> {
-            plugin.staff().streamOnlineStaffMembers()
-                .filter(member -> member.mode() == Mode.STAFF)
-                .flatMap(member -> member.player().stream())
-                .forEach(notification::actionBarToRecipient);
-        });
+        // Capture snapshots spread out over time and save data to disk
+        new PeriodicCapture(plugin);
     }
     
     private void applyStaffMode(SnapshotContext context)
@@ -87,13 +80,22 @@ public class StaffModeSessionListener implements Listener
         player.setAllowFlight(true);
         player.setFlying(true);
         
+        // Don't drive mob spawning or load more chunks than needed (restored with the survival snapshot).
+        if (PaperLib.isPaper())
+        {
+            player.setAffectsSpawning(plugin.config().getOrDefault(StaffModeConfig.WORLD_IMPACT_AFFECTS_SPAWNING));
+            
+            int viewDistance = plugin.config().getOrDefault(StaffModeConfig.WORLD_IMPACT_VIEW_DISTANCE);
+            if (viewDistance > 0) { player.setViewDistance(viewDistance); }
+        }
+        
         // Clear targets of aggressive mobs since staff are immune.
         player.getNearbyEntities(256, 256, 256).stream()
             .flatMap(entity -> Cast.as(Mob.class, entity).stream())
             .filter(mob -> player.equals(mob.getTarget()))
             .forEach(mob -> mob.setTarget(null));
         
-        if (profile.nightVision()) { NightVision.apply(player); }
+        if (profile.nightVision()) { plugin.nightVision().start(player); }
         if (profile.spectator()) { player.setGameMode(GameMode.SPECTATOR); }
     }
     
@@ -125,6 +127,72 @@ public class StaffModeSessionListener implements Listener
         });
     }
     
+    private void checkPermissions(Player player)
+    {
+        checkForDemotion(player);
+        
+        // Pick up staff mode granted or revoked by permission.
+        plugin.staff().refreshStaffMode(player);
+    }
+    
+    // Coalesces multiple signals for the same player into a single check on the next tick.
+    private void checkPermissionsLater(Player player)
+    {
+        UUID uuid = player.getUniqueId();
+        if (!pendingPermissionChecks.add(uuid)) { return; }
+        
+        plugin.sync().run(() ->
+        {
+            pendingPermissionChecks.remove(uuid);
+            
+            @NullOr Player online = plugin.getServer().getPlayer(uuid);
+            if (online != null) { checkPermissions(online); }
+        });
+    }
+    
+    private void sweepNext()
+    {
+        if (sweep.isEmpty()) { sweep.addAll(plugin.staff().onlineProfileUuids()); }
+        
+        @NullOr UUID uuid = sweep.poll();
+        if (uuid == null) { return; }
+        
+        @NullOr Player player = plugin.getServer().getPlayer(uuid);
+        if (player != null) { checkPermissions(player); }
+    }
+    
+    // Best-effort hint: only sent when the server resends the command tree, e.g. on op changes or when
+    // a permission plugin calls updateCommands() (like LuckPerms' update-client-command-list), not on
+    // every permission change. Anything this misses is still picked up by the sweep.
+    @EventListener(ListenerOrder.MONITOR)
+    public void onCommandTreeSent(PlayerCommandSendEvent event)
+    {
+        checkPermissionsLater(event.getPlayer());
+    }
+    
+    // Permissions may be per-world.
+    @EventListener(ListenerOrder.MONITOR)
+    public void onChangedWorld(PlayerChangedWorldEvent event)
+    {
+        checkPermissionsLater(event.getPlayer());
+    }
+    
+    @EventListener(ListenerOrder.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent event)
+    {
+        // Load existing profiles before joining so that the main thread doesn't have to.
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) { return; }
+        plugin.staff().prefetch(event.getUniqueId());
+    }
+    
+    @EventListener(ListenerOrder.MONITOR)
+    public void onLogin(PlayerLoginEvent event)
+    {
+        // Kicked after the pre-login: the prefetched profile won't be used.
+        if (event.getResult() == PlayerLoginEvent.Result.ALLOWED) { return; }
+        plugin.staff().discardPrefetch(event.getPlayer().getUniqueId());
+    }
+    
     @EventListener
     public void onStaffJoin(PlayerJoinEvent event)
     {
@@ -135,6 +203,7 @@ public class StaffModeSessionListener implements Listener
         
         StaffModeProfile profile = plugin.staff().onlineStaffProfile(player);
         profile.updateMetaData();
+        plugin.staff().refreshStaffMode(player);
         
         if (profile.mode() == Mode.STAFF) { applyStaffMode(new SnapshotContext(player, Mode.STAFF)); }
     }
@@ -142,7 +211,10 @@ public class StaffModeSessionListener implements Listener
     @EventListener
     public void onStaffQuit(PlayerQuitEvent event)
     {
+        // Restores happen synchronously from here on.
+        plugin.staff().leaving(event.getPlayer());
         checkForDemotion(event.getPlayer());
+        plugin.staff().released(event.getPlayer());
     }
     
     @EventListener
@@ -17,20 +17,27 @@ import org.bukkit.configuration.ConfigurationSection;
 import pl.tlinkowski.annotation.basic.NullOr;
 
 import java.time.Instant;
-import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 
 public final class GameplaySnapshot implements Snapshot.DoNotRegister
 {
     private static final YamlValue<Instant> UPDATED = YamlValue.ofInstant("updated").maybe();
     
-    public static SnapshotSource<GameplaySnapshot> source(SnapshotRegistry registry)
+    public interface Source extends SnapshotSource<GameplaySnapshot>
     {
-        return new SnapshotSource<>()
+        // Only (re)writes components that differ from the previous snapshot, returns whether anything was written.
+        boolean update(ConfigurationSection storage, String key, @NullOr GameplaySnapshot previous, GameplaySnapshot updated);
+    }
+    
+    public static Source source(SnapshotRegistry registry)
+    {
+        return new Source()
         {
             @Override
             public GameplaySnapshot capture(SnapshotContext context)
@@ -59,28 +66,23 @@ public final class GameplaySnapshot implements Snapshot.DoNotRegister
                     @NullOr ConfigurationSection section = Sections.get(data, "snapshots").orElse(null);
                     if (section == null) { return null; }
                     
-                    List<Snapshot> snapshots = new ArrayList<>();
+                    Map<Class<? extends Snapshot>, Component> components = new LinkedHashMap<>();
                     
+                    // Only look up registrations here, each component is decoded when it's first needed.
                     for (String sectionKey : section.getKeys(false))
                     {
                         @NullOr NamespacedKey namespacedKey = NamespacedKey.fromString(sectionKey);
                         if (namespacedKey == null) { continue; }
                         
                         registry.registrationByKey(namespacedKey)
-                            .map(SnapshotRegistry.Registration::source)
-                            .flatMap(source -> {
-                                try { return source.get(section, sectionKey); }
-                                catch (RuntimeException e) { e.printStackTrace(); }
-                                return Optional.empty();
-                            })
-                            .ifPresent(snapshots::add);
+                            .map(registration -> new Component(new Stored(registry, registration, section, sectionKey)))
+                            .ifPresent(component -> components.put(component.type(), component));
                     }
                     
-                    return (snapshots.isEmpty()) ? null : new GameplaySnapshot(updated, snapshots);
+                    return (components.isEmpty()) ? null : new GameplaySnapshot(updated, components);
                 });
             }
             
-            @SuppressWarnings("unchecked")
             @Override
             public void set(ConfigurationSection storage, String key, @NullOr GameplaySnapshot updated)
             {
@@ -95,16 +97,77 @@ public final class GameplaySnapshot implements Snapshot.DoNotRegister
                 
                 ConfigurationSection section = Sections.getOrCreate(data, "snapshots");
                 
-                for (Snapshot snapshot : updated.snapshotsByType.values())
+                for (Component component : updated.componentsByType.values())
                 {
-                    registry.registrationByType(snapshot.getClass())
-                        .map(registration -> (SnapshotRegistry.Registration<Snapshot>) registration)
-                        .ifPresent(registration -> {
-                            try { registration.source().set(section, registration.key().toString(), snapshot); }
-                            catch (RuntimeException e) { e.printStackTrace(); }
-                        });
+                    // Already stored right here, no need to decode it just to write it back.
+                    if (component.isStoredIn(section)) { continue; }
+                    write(section, component);
                 }
             }
+            
+            @Override
+            public boolean update(ConfigurationSection storage, String key, @NullOr GameplaySnapshot previous, GameplaySnapshot updated)
+            {
+                if (previous == null || !storage.isConfigurationSection(key))
+                {
+                    // Delete old data first to completely overwrite the snapshot
+                    storage.set(key, null);
+                    set(storage, key, updated);
+                    return true;
+                }
+                
+                ConfigurationSection data = Sections.getOrCreate(storage, key);
+                ConfigurationSection section = Sections.getOrCreate(data, "snapshots");
+                boolean isChanged = false;
+                
+                for (Component component : updated.componentsByType.values())
+                {
+                    @NullOr Component existing = previous.componentsByType.get(component.type());
+                    
+                    if (existing != null)
+                    {
+                        OptionalInt before = existing.fingerprint(registry);
+                        OptionalInt after = component.fingerprint(registry);
+                        
+                        if (before.isPresent() && before.equals(after) && existing.isSame(component, registry)) { continue; }
+                    }
+                    
+                    write(section, component);
+                    isChanged = true;
+                }
+                
+                // Components that no longer apply.
+                for (Class<? extends Snapshot> type : previous.componentsByType.keySet())
+                {
+                    if (updated.componentsByType.containsKey(type)) { continue; }
+                    
+                    registry.registrationByType(type).ifPresent(registration -> section.set(registration.key().toString(), null));
+                    isChanged = true;
+                }
+                
+                if (isChanged) { UPDATED.set(data, updated.updated); }
+                return isChanged;
+            }
+            
+            @SuppressWarnings("unchecked")
+            private void write(ConfigurationSection section, Component component)
+            {
+                @NullOr Snapshot snapshot = component.snapshot();
+                if (snapshot == null) { return; }
+                
+                registry.registrationByType(snapshot.getClass())
+                    .map(registration -> (SnapshotRegistry.Registration<Snapshot>) registration)
+                    .ifPresent(registration -> {
+                        String registrationKey = registration.key().toString();
+                        
+                        try
+                        {
+                            section.set(registrationKey, null);
+                            registration.source().set(section, registrationKey, snapshot);
+                        }
+                        catch (RuntimeException e) { e.printStackTrace(); }
+                    });
+            }
         };
     }
     
@@ -118,34 +181,184 @@ public final class GameplaySnapshot implements Snapshot.DoNotRegister
         return new GameplaySnapshot(Instant.now(), snapshots);
     }
     
-    private final Map<Class<? extends Snapshot>, Snapshot> snapshotsByType = new LinkedHashMap<>();
+    private final Map<Class<? extends Snapshot>, Component> componentsByType = new LinkedHashMap<>();
     
     private final Instant updated;
     
     public GameplaySnapshot(Instant updated, List<Snapshot> snapshots)
     {
         this.updated = updated;
-        for (Snapshot snapshot : snapshots) { snapshotsByType.put(snapshot.getClass(), snapshot); }
+        for (Snapshot snapshot : snapshots) { componentsByType.put(snapshot.getClass(), new Component(snapshot)); }
     }
     
+    private GameplaySnapshot(Instant updated, Map<Class<? extends Snapshot>, Component> components)
+    {
+        this.updated = updated;
+        componentsByType.putAll(components);
+    }
+    
+    public Instant updated() { return updated; }
+    
     @Override
     public void apply(SnapshotContext context)
     {
-        snapshotsByType.values().forEach(snapshot ->
+        componentsByType.values().forEach(component ->
         {
+            @NullOr Snapshot snapshot = component.snapshot();
+            if (snapshot == null) { return; }
+            
             try { snapshot.apply(context); }
             catch (RuntimeException e) { e.printStackTrace(); } // TODO: send message to player?
         });
     }
     
+    @Override
+    public CompletableFuture<Void> applyAsync(SnapshotContext context)
+    {
+        // Everything is applied right away (in the same tick as the capture before it),
+        // only completing once components that take longer, like the teleport, are done.
+        return CompletableFuture.allOf(
+            componentsByType.values().stream()
+                .map(component -> component.applying = applyAsync(component, context))
+                .toArray(CompletableFuture[]::new)
+        );
+    }
+    
+    // Synchronously applies the components that applyAsync hasn't finished yet.
+    public void applyPending(SnapshotContext context)
+    {
+        for (Component component : componentsByType.values())
+        {
+            @NullOr CompletableFuture<Void> applying = component.applying;
+            if (applying == null || applying.isDone()) { continue; }
+            
+            component.applying = null;
+            
+            @NullOr Snapshot snapshot = component.snapshot();
+            if (snapshot == null) { continue; }
+            
+            try { snapshot.apply(context); }
+            catch (RuntimeException e) { e.printStackTrace(); }
+        }
+    }
+    
+    // Failures are logged and passed on, so the restore as a whole can report them.
+    private static CompletableFuture<Void> applyAsync(Component component, SnapshotContext context)
+    {
+        @NullOr Snapshot snapshot = component.snapshot();
+        if (snapshot == null) { return CompletableFuture.completedFuture(null); }
+        
+        try
+        {
+            return snapshot.applyAsync(context).whenComplete((applied, error) ->
+            {
+                if (error != null) { error.printStackTrace(); }
+            });
+        }
+        catch (RuntimeException e)
+        {
+            e.printStackTrace();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+    
     public Stream<Snapshot> streamAllSnapshots()
     {
-        return snapshotsByType.values().stream();
+        return componentsByType.values().stream().flatMap(component -> Stream.ofNullable(component.snapshot()));
     }
     
     @SuppressWarnings("unchecked")
     public <S extends Snapshot> Optional<S> snapshotByType(Class<S> type)
     {
-        return Optional.ofNullable((S) snapshotsByType.get(type));
+        @NullOr Component component = componentsByType.get(type);
+        return (component == null) ? Optional.empty() : Optional.ofNullable((S) component.snapshot());
+    }
+    
+    private record Stored(SnapshotRegistry registry, SnapshotRegistry.Registration<?> registration, ConfigurationSection section, String key) {}
+    
+    // A sub-snapshot that's either already in memory or still undecoded in storage.
+    private static final class Component
+    {
+        private final Class<? extends Snapshot> type;
+        
+        private @NullOr Stored stored;
+        private @NullOr Snapshot snapshot;
+        
+        private int fingerprint;
+        private boolean hasFingerprint = false;
+        
+        private @NullOr CompletableFuture<Void> applying;
+        
+        Component(Snapshot snapshot)
+        {
+            this.type = snapshot.getClass();
+            this.snapshot = snapshot;
+        }
+        
+        Component(Stored stored)
+        {
+            this.type = stored.registration().type();
+            this.stored = stored;
+        }
+        
+        Class<? extends Snapshot> type() { return type; }
+        
+        // Only known for components in memory: stored ones aren't decoded just to compare them.
+        @SuppressWarnings("unchecked")
+        OptionalInt fingerprint(SnapshotRegistry registry)
+        {
+            if (hasFingerprint) { return OptionalInt.of(fingerprint); }
+            
+            @NullOr Snapshot snapshot = this.snapshot;
+            if (stored != null || snapshot == null) { return OptionalInt.empty(); }
+            
+            Optional<SnapshotRegistry.Registration<Snapshot>> registration =
+                registry.registrationByType(type).map(existing -> (SnapshotRegistry.Registration<Snapshot>) existing);
+            
+            if (registration.isEmpty()) { return OptionalInt.empty(); }
+            
+            try { fingerprint = registration.get().source().fingerprint(snapshot); }
+            catch (RuntimeException e) { return OptionalInt.empty(); }
+            
+            hasFingerprint = true;
+            return OptionalInt.of(fingerprint);
+        }
+        
+        // Only called once fingerprints match, so both are in memory.
+        @SuppressWarnings("unchecked")
+        boolean isSame(Component updated, SnapshotRegistry registry)
+        {
+            @NullOr Snapshot previous = this.snapshot;
+            @NullOr Snapshot current = updated.snapshot;
+            if (previous == null || current == null) { return false; }
+            
+            Optional<SnapshotRegistry.Registration<Snapshot>> registration =
+                registry.registrationByType(type).map(existing -> (SnapshotRegistry.Registration<Snapshot>) existing);
+            
+            try { return registration.isPresent() && registration.get().source().isSame(previous, current); }
+            catch (RuntimeException e) { return false; }
+        }
+        
+        boolean isStoredIn(ConfigurationSection section)
+        {
+            @NullOr Stored stored = this.stored;
+            return stored != null && stored.section() == section;
+        }
+        
+        @NullOr Snapshot snapshot()
+        {
+            @NullOr Stored stored = this.stored;
+            if (stored == null) { return snapshot; }
+            
+            // Decode at most once, even if it fails.
+            this.stored = null;
+            long start = System.nanoTime();
+            
+            try { snapshot = stored.registration().source().get(stored.section(), stored.key()).orElse(null); }
+            catch (RuntimeException e) { e.printStackTrace(); }
+            
+            stored.registry().decoded(stored.registration().key(), System.nanoTime() - start);
+            return snapshot;
+        }
     }
 }
@@ -7,9 +7,18 @@
  */
 package community.leaf.survival.staffmode.snapshots;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface Snapshot
 {
     void apply(SnapshotContext context);
     
+    // Snapshots that have to wait on something (like chunks loading) complete later.
+    default CompletableFuture<Void> applyAsync(SnapshotContext context)
+    {
+        apply(context);
+        return CompletableFuture.completedFuture(null);
+    }
+    
     interface DoNotRegister extends Snapshot {}
 }
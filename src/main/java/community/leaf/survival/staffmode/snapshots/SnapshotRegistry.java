@@ -13,11 +13,16 @@ import community.leaf.survival.staffmode.snapshots.defaults.InventorySnapshot;
 import community.leaf.survival.staffmode.snapshots.defaults.PositionSnapshot;
 import community.leaf.survival.staffmode.snapshots.defaults.PotionEffectsSnapshot;
 import community.leaf.survival.staffmode.snapshots.defaults.StatsSnapshot;
+import community.leaf.survival.staffmode.snapshots.defaults.WorldImpactSnapshot;
+import io.papermc.lib.PaperLib;
 import org.bukkit.NamespacedKey;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.LongSummaryStatistics;
 import java.util.Map;
 import java.util.Optional;
+import java.util.StringJoiner;
 import java.util.stream.Stream;
 
 public final class SnapshotRegistry
@@ -27,6 +32,8 @@ public final class SnapshotRegistry
     private final Map<NamespacedKey, Registration<?>> registrationsByKey = new LinkedHashMap<>();
     private final Map<Class<? extends Snapshot>, Registration<?>> registrationsByType = new LinkedHashMap<>();
     
+    private final Map<NamespacedKey, LongSummaryStatistics> decodeNanosByKey = new LinkedHashMap<>();
+    
     public SnapshotRegistry(StaffModePlugin plugin)
     {
         // Register default types
@@ -35,6 +42,11 @@ public final class SnapshotRegistry
         register(PositionSnapshot.class, plugin.key("position"), PositionSnapshot.SOURCE);
         register(InventorySnapshot.class, plugin.key("inventory"), InventorySnapshot.SOURCE);
         register(PotionEffectsSnapshot.class, plugin.key("potion-effects"), PotionEffectsSnapshot.SOURCE);
+        
+        if (PaperLib.isPaper())
+        {
+            register(WorldImpactSnapshot.class, plugin.key("world-impact"), WorldImpactSnapshot.SOURCE);
+        }
     }
     
     public <S extends Snapshot> void register(Class<S> type, NamespacedKey key, SnapshotSource<S> source)
@@ -70,4 +82,28 @@ public final class SnapshotRegistry
     {
         return Optional.ofNullable((Registration<S>) registrationsByType.get(type));
     }
+    
+    void decoded(NamespacedKey key, long nanos)
+    {
+        decodeNanosByKey.computeIfAbsent(key, k -> new LongSummaryStatistics()).accept(nanos);
+    }
+    
+    public Map<NamespacedKey, LongSummaryStatistics> decodeTimings()
+    {
+        return Collections.unmodifiableMap(decodeNanosByKey);
+    }
+    
+    public String decodeSummary()
+    {
+        if (decodeNanosByKey.isEmpty()) { return "nothing decoded yet"; }
+        
+        StringJoiner joiner = new StringJoiner(", ");
+        
+        decodeNanosByKey.forEach((key, stats) -> joiner.add(String.format(
+            "%s %dx avg %.2fms max %.2fms",
+            key.getKey(), stats.getCount(), stats.getAverage() / 1_000_000.0, stats.getMax() / 1_000_000.0
+        )));
+        
+        return joiner.toString();
+    }
 }
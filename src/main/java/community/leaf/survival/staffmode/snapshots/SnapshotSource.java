@@ -14,4 +14,10 @@ public interface SnapshotSource<S> extends YamlAccessor<S>
     default boolean isApplicable(SnapshotContext context) { return true; }
     
     S capture(SnapshotContext context);
+    
+    // Cheap content hash used to skip re-encoding snapshots that haven't changed.
+    default int fingerprint(S snapshot) { return snapshot.hashCode(); }
+    
+    // Confirms matching fingerprints, since those can collide.
+    default boolean isSame(S previous, S updated) { return previous.equals(updated); }
 }
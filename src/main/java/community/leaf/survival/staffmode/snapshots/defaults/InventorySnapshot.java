@@ -7,34 +7,31 @@
  */
 package community.leaf.survival.staffmode.snapshots.defaults;
 
-import community.leaf.configvalues.bukkit.YamlValue;
 import community.leaf.configvalues.bukkit.util.Sections;
 import community.leaf.survival.staffmode.snapshots.Snapshot;
 import community.leaf.survival.staffmode.snapshots.SnapshotContext;
 import community.leaf.survival.staffmode.snapshots.SnapshotSource;
+import community.leaf.survival.staffmode.util.ItemCodec;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.PlayerInventory;
-import org.bukkit.util.io.BukkitObjectInputStream;
-import org.bukkit.util.io.BukkitObjectOutputStream;
 import pl.tlinkowski.annotation.basic.NullOr;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.util.Base64;
+import java.util.Arrays;
 import java.util.Optional;
 
 // Can't actually be a record due to defensive array cloning.
 @SuppressWarnings("ClassCanBeRecord")
 public final class InventorySnapshot implements Snapshot
 {
-    private static final YamlValue<String> MAIN = YamlValue.ofString("main").maybe();
+    // Values are either binary (see: ItemCodec) or legacy Base64 strings,
+    // which are upgraded to binary the next time the snapshot is written.
+    private static final String MAIN = "main";
     
-    private static final YamlValue<String> ARMOR = YamlValue.ofString("armor").maybe();
+    private static final String ARMOR = "armor";
     
-    private static final YamlValue<String> EXTRA = YamlValue.ofString("extra").maybe();
+    private static final String EXTRA = "extra";
     
     public static final SnapshotSource<InventorySnapshot> SOURCE =
         new SnapshotSource<>()
@@ -42,6 +39,22 @@ public final class InventorySnapshot implements Snapshot
             @Override
             public InventorySnapshot capture(SnapshotContext context) { return of(context.player()); }
             
+            @Override
+            public int fingerprint(InventorySnapshot snapshot)
+            {
+                int hash = Arrays.hashCode(snapshot.main);
+                hash = 31 * hash + Arrays.hashCode(snapshot.armor);
+                return 31 * hash + Arrays.hashCode(snapshot.extra);
+            }
+            
+            @Override
+            public boolean isSame(InventorySnapshot previous, InventorySnapshot updated)
+            {
+                return Arrays.equals(previous.main, updated.main)
+                    && Arrays.equals(previous.armor, updated.armor)
+                    && Arrays.equals(previous.extra, updated.extra);
+            }
+            
             @Override
             public Optional<InventorySnapshot> get(ConfigurationSection storage, String key)
             {
@@ -49,9 +62,9 @@ public final class InventorySnapshot implements Snapshot
                 {
                     try
                     {
-                        @NullOr ItemStack[] inventory = itemsFromBase64(MAIN.get(data).orElse(""));
-                        @NullOr ItemStack[] armor = itemsFromBase64(ARMOR.get(data).orElse(""));
-                        @NullOr ItemStack[] extra = itemsFromBase64(EXTRA.get(data).orElse(""));
+                        @NullOr ItemStack[] inventory = ItemCodec.decodeStored(data.get(MAIN));
+                        @NullOr ItemStack[] armor = ItemCodec.decodeStored(data.get(ARMOR));
+                        @NullOr ItemStack[] extra = ItemCodec.decodeStored(data.get(EXTRA));
                         
                         return new InventorySnapshot(inventory, armor, extra);
                     }
@@ -74,9 +87,10 @@ public final class InventorySnapshot implements Snapshot
                 
                 ConfigurationSection data = Sections.getOrCreate(storage, key);
                 
-                MAIN.set(data, itemsToBase64(updated.main));
-                ARMOR.set(data, itemsToBase64(updated.armor));
-                EXTRA.set(data, itemsToBase64(updated.extra));
+                // Captured on the main thread, encoded later when it's persisted.
+                data.set(MAIN, ItemCodec.deferForStorage(updated.main));
+                data.set(ARMOR, ItemCodec.deferForStorage(updated.armor));
+                data.set(EXTRA, ItemCodec.deferForStorage(updated.extra));
             }
         };
     
@@ -88,46 +102,6 @@ public final class InventorySnapshot implements Snapshot
         return new InventorySnapshot(inv.getContents(), inv.getArmorContents(), inv.getExtraContents());
     }
     
-    private static String itemsToBase64(@NullOr ItemStack[] items)
-    {
-        try
-        (
-            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-            BukkitObjectOutputStream output = new BukkitObjectOutputStream(bytes);
-        )
-        {
-            output.writeInt(items.length);
-            for (@NullOr ItemStack item : items) { output.writeObject(item); }
-            return Base64.getEncoder().encodeToString(bytes.toByteArray());
-        }
-        catch (IOException e)
-        {
-            throw new RuntimeException("Could not encode items into Base64", e);
-        }
-    }
-    
-    private static @NullOr ItemStack[] itemsFromBase64(String base64)
-    {
-        try
-        (
-            ByteArrayInputStream bytes = new ByteArrayInputStream(Base64.getDecoder().decode(base64));
-            BukkitObjectInputStream input = new BukkitObjectInputStream(bytes);
-        )
-        {
-            @NullOr ItemStack[] items = new ItemStack[input.readInt()];
-            for (int i = 0; i < items.length; i++) { items[i] = (ItemStack) input.readObject(); }
-            return items;
-        }
-        catch (IOException e)
-        {
-            throw new RuntimeException("Could not decode items from Base64", e);
-        }
-        catch (ClassNotFoundException e)
-        {
-            throw new RuntimeException(e);
-        }
-    }
-    
     private static @NullOr ItemStack[] clone(@NullOr ItemStack[] items)
     {
         @NullOr ItemStack[] cloned = new ItemStack[items.length];
@@ -12,11 +12,14 @@ import community.leaf.survival.staffmode.snapshots.Snapshot;
 import community.leaf.survival.staffmode.snapshots.SnapshotContext;
 import community.leaf.survival.staffmode.snapshots.SnapshotSource;
 import community.leaf.survival.staffmode.util.Position;
+import io.papermc.lib.PaperLib;
+import org.bukkit.Location;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
 import pl.tlinkowski.annotation.basic.NullOr;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public record PositionSnapshot(Position position) implements Snapshot
 {
@@ -47,11 +50,45 @@ public record PositionSnapshot(Position position) implements Snapshot
         return new PositionSnapshot(Position.of(player.getLocation()));
     }
     
+    private Location destination()
+    {
+        return position().locationInLoadedWorld().orElseThrow(() ->
+            new IllegalStateException("Cannot teleport to unloaded world: " + position().world())
+        );
+    }
+    
     @Override
     public void apply(SnapshotContext context)
     {
-        context.player().teleport(position().locationInLoadedWorld().orElseThrow(() ->
-            new IllegalStateException("Cannot teleport to unloaded world: " + position().world()
-        )));
+        if (!context.player().teleport(destination()))
+        {
+            throw new IllegalStateException("Teleport to " + position() + " was refused");
+        }
+    }
+    
+    @Override
+    public CompletableFuture<Void> applyAsync(SnapshotContext context)
+    {
+        // Spigot can't load chunks asynchronously, so just teleport right away.
+        if (!PaperLib.isPaper())
+        {
+            apply(context);
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        Location destination = destination();
+        Player player = context.player();
+        boolean wasInvulnerable = player.isInvulnerable();
+        
+        // Nothing can hurt them while the destination chunks are loading.
+        player.setInvulnerable(true);
+        
+        return PaperLib.teleportAsync(player, destination)
+            .whenComplete((teleported, error) -> player.setInvulnerable(wasInvulnerable))
+            .thenAccept(teleported ->
+            {
+                // Cancelled (e.g. by another plugin): try once more right away, otherwise the restore failed.
+                if (!teleported) { apply(context); }
+            });
     }
 }
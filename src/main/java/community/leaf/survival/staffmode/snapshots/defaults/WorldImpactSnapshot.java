@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.snapshots.defaults;
+
+import community.leaf.configvalues.bukkit.YamlValue;
+import community.leaf.configvalues.bukkit.util.Sections;
+import community.leaf.survival.staffmode.Mode;
+import community.leaf.survival.staffmode.snapshots.Snapshot;
+import community.leaf.survival.staffmode.snapshots.SnapshotContext;
+import community.leaf.survival.staffmode.snapshots.SnapshotSource;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+import java.util.Optional;
+
+// Paper-only: how much the player drives mob spawning and chunk loading around them.
+public record WorldImpactSnapshot(boolean affectsSpawning, int viewDistance) implements Snapshot
+{
+    private static final YamlValue<Boolean> AFFECTS_SPAWNING = YamlValue.ofBoolean("affects-spawning").maybe();
+    
+    private static final YamlValue<Integer> VIEW_DISTANCE = YamlValue.ofInteger("view-distance").maybe();
+    
+    public static final SnapshotSource<WorldImpactSnapshot> SOURCE =
+        new SnapshotSource<>()
+        {
+            @Override
+            public boolean isApplicable(SnapshotContext context) { return context.mode() == Mode.SURVIVAL; }
+            
+            @Override
+            public WorldImpactSnapshot capture(SnapshotContext context) { return of(context.player()); }
+            
+            @Override
+            public Optional<WorldImpactSnapshot> get(ConfigurationSection storage, String key)
+            {
+                return Sections.get(storage, key).map(data ->
+                {
+                    boolean affectsSpawning = AFFECTS_SPAWNING.get(data).orElse(true);
+                    int viewDistance = VIEW_DISTANCE.get(data).orElse(-1);
+                    
+                    return new WorldImpactSnapshot(affectsSpawning, viewDistance);
+                });
+            }
+            
+            @Override
+            public void set(ConfigurationSection storage, String key, @NullOr WorldImpactSnapshot updated)
+            {
+                if (updated == null)
+                {
+                    storage.set(key, null);
+                    return;
+                }
+                
+                ConfigurationSection data = Sections.getOrCreate(storage, key);
+                
+                AFFECTS_SPAWNING.set(data, updated.affectsSpawning);
+                VIEW_DISTANCE.set(data, updated.viewDistance);
+            }
+        };
+    
+    public static WorldImpactSnapshot of(Player player)
+    {
+        return new WorldImpactSnapshot(player.getAffectsSpawning(), player.getViewDistance());
+    }
+    
+    @Override
+    public void apply(SnapshotContext context)
+    {
+        context.player().setAffectsSpawning(affectsSpawning);
+        
+        // Unknown or invalid view distance, leave it as is.
+        if (viewDistance > 0) { context.player().setViewDistance(viewDistance); }
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.storage;
+
+import community.leaf.survival.staffmode.StaffModePlugin;
+import community.leaf.tasks.Concurrency;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32C;
+
+// Shared save pipeline: dirty profiles are copied on the main thread,
+// then encoded and persisted on a single background storage thread.
+abstract class AbstractProfileStore implements ProfileStore
+{
+    // Loaded profiles, only modified on the main thread (but may be checked from any thread).
+    protected final Map<UUID, ProfileData> profilesByUuid = new ConcurrentHashMap<>();
+    
+    // Every known profile, whether it's loaded yet or not.
+    private final Set<UUID> index = ConcurrentHashMap.newKeySet();
+    
+    private final Map<UUID, Prefetch> prefetches = new ConcurrentHashMap<>();
+    
+    // Profiles copied by a save that hasn't been persisted yet (these stay in memory until it is).
+    private final Set<UUID> writing = ConcurrentHashMap.newKeySet();
+    
+    private final Set<UUID> deleted = new HashSet<>();
+    
+    // Single writer thread: saves are encoded and written strictly in order.
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable ->
+    {
+        Thread thread = new Thread(runnable, "Survival-Staff-Mode Storage");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    // Hash of each stored record as it currently exists in storage.
+    private final Map<String, Long> writtenHashes = new ConcurrentHashMap<>();
+    
+    private final WriteCounters counters = new WriteCounters();
+    
+    private volatile SaveReport lastSave = SaveReport.NONE;
+    
+    protected final StaffModePlugin plugin;
+    
+    protected AbstractProfileStore(StaffModePlugin plugin)
+    {
+        this.plugin = plugin;
+    }
+    
+    // List the profiles in storage without loading them.
+    protected abstract Set<UUID> readIndex();
+    
+    // Any thread: load a single profile from storage, or null if it's missing or invalid.
+    protected abstract @NullOr ProfileData read(UUID uuid);
+    
+    // Storage thread: persist the copied profiles and remove the deleted ones.
+    protected abstract void persist(Map<UUID, Map<String, Object>> copies, Set<UUID> removals, SaveTally tally);
+    
+    // Storage thread: release any resources after the final save.
+    protected void closeResources() {}
+    
+    protected void reset()
+    {
+        profilesByUuid.clear();
+        index.clear();
+        prefetches.clear();
+        deleted.clear();
+        writtenHashes.clear();
+    }
+    
+    @Override
+    public void load()
+    {
+        reset();
+        index.addAll(readIndex());
+    }
+    
+    @Override
+    public Set<UUID> uuids() { return Set.copyOf(index); }
+    
+    @Override
+    public boolean contains(UUID uuid) { return index.contains(uuid); }
+    
+    @Override
+    public int loaded() { return profilesByUuid.size(); }
+    
+    @Override
+    public void prefetch(UUID uuid)
+    {
+        if (!index.contains(uuid) || profilesByUuid.containsKey(uuid)) { return; }
+        
+        // Queued behind any pending writes, so whatever it reads is up-to-date.
+        prefetches.computeIfAbsent(uuid, k ->
+        {
+            AtomicBoolean claimed = new AtomicBoolean();
+            
+            // Skips reading if it was claimed (read directly or discarded) before getting its turn.
+            return new Prefetch(claimed, CompletableFuture.supplyAsync(
+                () -> (claimed.compareAndSet(false, true)) ? read(k) : null, executor
+            ));
+        });
+    }
+    
+    // Read exactly once: either by the storage thread or, if it hasn't started yet, by whoever claims it first.
+    private record Prefetch(AtomicBoolean claimed, CompletableFuture<@NullOr ProfileData> future) {}
+    
+    @Override
+    public void discardPrefetch(UUID uuid)
+    {
+        @NullOr Prefetch prefetch = prefetches.remove(uuid);
+        if (prefetch != null) { prefetch.claimed().set(true); }
+    }
+    
+    @Override
+    public Optional<ProfileData> existing(UUID uuid)
+    {
+        @NullOr ProfileData existing = profilesByUuid.get(uuid);
+        if (existing != null) { return Optional.of(existing); }
+        if (!index.contains(uuid)) { return Optional.empty(); }
+        
+        @NullOr ProfileData loaded = readOnce(uuid);
+        
+        if (loaded == null)
+        {
+            // Couldn't be read, so treat it as gone.
+            index.remove(uuid);
+            return Optional.empty();
+        }
+        
+        profilesByUuid.put(uuid, loaded);
+        return Optional.of(loaded);
+    }
+    
+    private @NullOr ProfileData readOnce(UUID uuid)
+    {
+        // Nothing unloaded has a pending write, so reading directly is up-to-date
+        // and doesn't wait behind the storage thread.
+        @NullOr Prefetch prefetch = prefetches.remove(uuid);
+        if (prefetch == null || prefetch.claimed().compareAndSet(false, true)) { return read(uuid); }
+        
+        // Already read (or being read right now): only waits for that single read, never for queued writes.
+        try { return prefetch.future().join(); }
+        catch (RuntimeException e) { return null; }
+    }
+    
+    @Override
+    public ProfileData getOrCreate(UUID uuid)
+    {
+        return existing(uuid).orElseGet(() ->
+        {
+            ProfileData created = new ProfileData(uuid);
+            profilesByUuid.put(uuid, created);
+            index.add(uuid);
+            deleted.remove(uuid);
+            return created;
+        });
+    }
+    
+    @Override
+    public boolean unload(UUID uuid)
+    {
+        @NullOr ProfileData profile = profilesByUuid.get(uuid);
+        
+        // Unsaved changes stay in memory until they're written.
+        if (profile != null && profile.isUpdated()) { return false; }
+        if (writing.contains(uuid)) { return false; }
+        
+        discardPrefetch(uuid);
+        profilesByUuid.remove(uuid);
+        return true;
+    }
+    
+    @Override
+    public void delete(UUID uuid)
+    {
+        discardPrefetch(uuid);
+        profilesByUuid.remove(uuid);
+        if (index.remove(uuid)) { deleted.add(uuid); }
+    }
+    
+    @Override
+    public void adopt(ProfileData profile)
+    {
+        discardPrefetch(profile.uuid());
+        profilesByUuid.put(profile.uuid(), profile);
+        index.add(profile.uuid());
+        deleted.remove(profile.uuid());
+    }
+    
+    @Override
+    public void handOver(ProfileStore replacement)
+    {
+        for (ProfileData profile : profilesByUuid.values())
+        {
+            if (!profile.isUpdated()) { continue; }
+            
+            // Snapshots might still be waiting to load from this store, which is about to be closed
+            // (that's queued before closing it, rather than read on the main thread).
+            profile.loadModesAsync(executor);
+            replacement.adopt(profile);
+        }
+        
+        deleted.forEach(replacement::delete);
+        deleted.clear();
+    }
+    
+    @Override
+    public boolean isUpdated()
+    {
+        return !deleted.isEmpty() || profilesByUuid.values().stream().anyMatch(ProfileData::isUpdated);
+    }
+    
+    @Override
+    public SaveReport lastSave() { return lastSave; }
+    
+    @Override
+    public WriteCounters counters() { return counters; }
+    
+    @Override
+    public CompletableFuture<SaveReport> saveIfUpdated(Concurrency concurrency)
+    {
+        if (!isUpdated())
+        {
+            // Still queued behind any save in progress, so completion means everything before it is stored.
+            CompletableFuture<SaveReport> future = CompletableFuture.supplyAsync(() -> SaveReport.NONE, executor);
+            if (concurrency == Concurrency.SYNC) { future.join(); }
+            return future;
+        }
+        
+        // Main thread: only take a detached copy of what changed...
+        long copyStart = System.nanoTime();
+        Map<UUID, Map<String, Object>> copies = new LinkedHashMap<>();
+        
+        for (ProfileData profile : profilesByUuid.values())
+        {
+            if (!profile.isUpdated()) { continue; }
+            
+            copies.put(profile.uuid(), SectionTrees.copy(profile.data()));
+            profile.updated(false);
+        }
+        
+        Set<UUID> removals = Set.copyOf(deleted);
+        deleted.clear();
+        
+        writing.addAll(copies.keySet());
+        long copyNanos = System.nanoTime() - copyStart;
+        
+        // ... then encode and persist everything in the background.
+        CompletableFuture<SaveReport> future = CompletableFuture.supplyAsync(() ->
+        {
+            SaveTally tally = new SaveTally();
+            
+            try { persist(copies, removals, tally); }
+            finally { writing.removeAll(copies.keySet()); }
+            
+            if (!tally.failures.isEmpty() && concurrency == Concurrency.ASYNC)
+            {
+                List<UUID> failures = List.copyOf(tally.failures);
+                plugin.sync().run(() -> failures.forEach(uuid -> retry(uuid, removals.contains(uuid))));
+            }
+            
+            SaveReport report = tally.report(copyNanos);
+            lastSave = report;
+            plugin.getLogger().fine("Saved staff mode data (" + name() + "): " + report.summary());
+            return report;
+        },
+        executor);
+        
+        if (concurrency == Concurrency.SYNC) { future.join(); }
+        return future;
+    }
+    
+    // Failed writes are retried with the next save, as are failed deletions (unless recreated since).
+    private void retry(UUID uuid, boolean isRemoval)
+    {
+        if (isRemoval && !index.contains(uuid)) { deleted.add(uuid); }
+        else { markUpdated(uuid); }
+    }
+    
+    private void markUpdated(UUID uuid)
+    {
+        @NullOr ProfileData profile = profilesByUuid.get(uuid);
+        if (profile != null) { profile.updated(true); }
+    }
+    
+    // Content hash: CRC32C of the encoded bytes combined with their length.
+    protected static long hash(byte[] bytes)
+    {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        return ((long) bytes.length << 32) | crc.getValue();
+    }
+    
+    protected void remember(String key, byte[] bytes)
+    {
+        writtenHashes.put(key, hash(bytes));
+    }
+    
+    protected void forget(String key)
+    {
+        writtenHashes.remove(key);
+    }
+    
+    // Keys of everything written (or read) under the prefix.
+    protected Set<String> writtenKeys(String prefix)
+    {
+        Set<String> keys = new HashSet<>();
+        for (String key : writtenHashes.keySet()) { if (key.startsWith(prefix)) { keys.add(key); } }
+        return keys;
+    }
+    
+    protected void forgetAll(String prefix)
+    {
+        writtenHashes.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+    
+    // Whether the encoded bytes differ from what was last written under the key.
+    protected boolean isChanged(String key, byte[] bytes)
+    {
+        @NullOr Long existing = writtenHashes.get(key);
+        return existing == null || existing != hash(bytes);
+    }
+    
+    protected void written(String key, byte[] bytes, SaveTally tally)
+    {
+        remember(key, bytes);
+        counters.written(bytes.length);
+        tally.written++;
+    }
+    
+    protected void skipped(byte[] bytes, SaveTally tally)
+    {
+        counters.skipped(bytes.length);
+        tally.skipped++;
+    }
+    
+    @Override
+    public void close()
+    {
+        executor.execute(this::closeResources);
+        executor.shutdown();
+        
+        try
+        {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS))
+            {
+                plugin.getLogger().warning("Timed out while waiting for staff mode data to finish saving.");
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
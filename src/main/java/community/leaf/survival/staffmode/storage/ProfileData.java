@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.storage;
+
+import community.leaf.configvalues.bukkit.util.Sections;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+public final class ProfileData
+{
+    public static final String MODES = "modes";
+    
+    private final YamlConfiguration data = new YamlConfiguration();
+    
+    private final UUID uuid;
+    
+    private boolean updated = false;
+    
+    // Stores may defer loading the (large) snapshot data until it's needed.
+    private @NullOr Supplier<Map<String, Object>> modesLoader;
+    
+    public ProfileData(UUID uuid)
+    {
+        this.uuid = uuid;
+    }
+    
+    public UUID uuid() { return uuid; }
+    
+    public YamlConfiguration data() { return data; }
+    
+    public ConfigurationSection modes()
+    {
+        @NullOr Supplier<Map<String, Object>> loader = modesLoader;
+        
+        if (loader != null)
+        {
+            modesLoader = null;
+            
+            Map<String, Object> modes = loader.get();
+            if (!modes.isEmpty()) { SectionTrees.paste(data.createSection(MODES), modes); }
+        }
+        
+        return Sections.getOrCreate(data, MODES);
+    }
+    
+    public boolean isModesLoaded() { return modesLoader == null; }
+    
+    void loadModesLater(Supplier<Map<String, Object>> loader) { this.modesLoader = loader; }
+    
+    // Starts loading deferred snapshots in the background, modes() only waits if they're needed before that's done.
+    void loadModesAsync(Executor executor)
+    {
+        @NullOr Supplier<Map<String, Object>> loader = modesLoader;
+        if (loader == null) { return; }
+        
+        CompletableFuture<Map<String, Object>> loading = CompletableFuture.supplyAsync(loader, executor);
+        modesLoader = loading::join;
+    }
+    
+    public boolean isUpdated() { return updated; }
+    
+    public void updated(boolean updated) { this.updated = updated; }
+}
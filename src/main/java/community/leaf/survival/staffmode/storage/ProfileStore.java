@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.storage;
+
+import community.leaf.tasks.Concurrency;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+public interface ProfileStore
+{
+    String name();
+    
+    void load();
+    
+    Set<UUID> uuids();
+    
+    boolean contains(UUID uuid);
+    
+    Map<UUID, ProfileSummary> summaries();
+    
+    int loaded();
+    
+    void prefetch(UUID uuid);
+    
+    void discardPrefetch(UUID uuid);
+    
+    Optional<ProfileData> existing(UUID uuid);
+    
+    ProfileData getOrCreate(UUID uuid);
+    
+    void delete(UUID uuid);
+    
+    // Take over a profile with unsaved changes from another store.
+    void adopt(ProfileData profile);
+    
+    // Move all unsaved changes into a replacement store (e.g. when reloading).
+    void handOver(ProfileStore replacement);
+    
+    boolean unload(UUID uuid);
+    
+    boolean isUpdated();
+    
+    CompletableFuture<SaveReport> saveIfUpdated(Concurrency concurrency);
+    
+    SaveReport lastSave();
+    
+    WriteCounters counters();
+    
+    void close();
+}
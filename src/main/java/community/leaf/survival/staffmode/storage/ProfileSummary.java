@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.storage;
+
+import community.leaf.configvalues.bukkit.YamlValue;
+import community.leaf.survival.staffmode.Mode;
+import org.bukkit.configuration.ConfigurationSection;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+import java.time.Instant;
+import java.util.UUID;
+
+// Just enough about a stored profile to list it without loading the whole thing.
+public record ProfileSummary(UUID uuid, @NullOr String name, @NullOr Mode mode, @NullOr Instant toggledAt)
+{
+    private static final YamlValue<String> META_NAME = YamlValue.ofString("meta.name").maybe();
+    
+    private static final YamlValue<String> META_MODE = YamlValue.ofString("meta.mode").maybe();
+    
+    private static final YamlValue<Instant> META_TOGGLE_TIMESTAMP = YamlValue.ofInstant("meta.toggle").maybe();
+    
+    private static final YamlValue<String> NAME = YamlValue.ofString("name").maybe();
+    
+    private static final YamlValue<String> MODE = YamlValue.ofString("mode").maybe();
+    
+    private static final YamlValue<Instant> TOGGLED_AT = YamlValue.ofInstant("toggled-at").maybe();
+    
+    static @NullOr Mode mode(@NullOr String mode)
+    {
+        return (mode == null) ? null : Mode.adapter().deserialize(mode).orElse(null);
+    }
+    
+    // From full profile data.
+    static ProfileSummary ofProfile(UUID uuid, ConfigurationSection data)
+    {
+        return new ProfileSummary(
+            uuid,
+            META_NAME.get(data).orElse(null),
+            mode(META_MODE.get(data).orElse(null)),
+            META_TOGGLE_TIMESTAMP.get(data).orElse(null)
+        );
+    }
+    
+    // From an entry in a summary index.
+    static ProfileSummary ofIndex(UUID uuid, ConfigurationSection entry)
+    {
+        return new ProfileSummary(
+            uuid,
+            NAME.get(entry).orElse(null),
+            mode(MODE.get(entry).orElse(null)),
+            TOGGLED_AT.get(entry).orElse(null)
+        );
+    }
+    
+    void index(ConfigurationSection entry)
+    {
+        NAME.set(entry, name);
+        MODE.set(entry, (mode == null) ? null : mode.name());
+        TOGGLED_AT.set(entry, toggledAt);
+    }
+}
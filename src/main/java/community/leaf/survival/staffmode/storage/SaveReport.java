@@ -0,0 +1,30 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.storage;
+
+import java.util.concurrent.TimeUnit;
+
+public record SaveReport(int written, int skipped, int deleted, int failed, long copyNanos, long encodeNanos, long writeNanos)
+{
+    public static final SaveReport NONE = new SaveReport(0, 0, 0, 0, 0, 0, 0);
+    
+    private static double millis(long nanos) { return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1); }
+    
+    public long backgroundNanos() { return encodeNanos + writeNanos; }
+    
+    public boolean isSuccessful() { return failed == 0; }
+    
+    public String summary()
+    {
+        return String.format(
+            "%d written, %d unchanged, %d deleted, %d failed; " +
+                "main thread copy: %.2fms, background encode: %.2fms, background write: %.2fms",
+            written, skipped, deleted, failed, millis(copyNanos), millis(encodeNanos), millis(writeNanos)
+        );
+    }
+}
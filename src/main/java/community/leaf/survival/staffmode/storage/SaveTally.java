@@ -0,0 +1,31 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// Mutable results of a single save, only touched by the storage thread.
+final class SaveTally
+{
+    final List<UUID> failures = new ArrayList<>();
+    
+    int written = 0;
+    int skipped = 0;
+    int deleted = 0;
+    long encodeNanos = 0;
+    long writeNanos = 0;
+    
+    void failed(UUID uuid) { failures.add(uuid); }
+    
+    SaveReport report(long copyNanos)
+    {
+        return new SaveReport(written, skipped, deleted, failures.size(), copyNanos, encodeNanos, writeNanos);
+    }
+}
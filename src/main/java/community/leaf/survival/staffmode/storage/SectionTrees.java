@@ -0,0 +1,71 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.storage;
+
+import community.leaf.survival.staffmode.util.ItemCodec;
+import org.bukkit.configuration.ConfigurationSection;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class SectionTrees
+{
+    private SectionTrees() {}
+    
+    // Detached deep copy of a section: nested sections become plain maps.
+    public static Map<String, Object> copy(ConfigurationSection section)
+    {
+        Map<String, Object> copy = new LinkedHashMap<>();
+        
+        for (String key : section.getKeys(false))
+        {
+            @NullOr Object value = section.get(key);
+            if (value != null) { copy.put(key, copyValue(value)); }
+        }
+        
+        return copy;
+    }
+    
+    private static Object copyValue(Object value)
+    {
+        if (value instanceof ConfigurationSection section) { return copy(section); }
+        
+        if (value instanceof Map<?, ?> map)
+        {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            map.forEach((key, entry) -> copy.put(key, (entry == null) ? null : copyValue(entry)));
+            return copy;
+        }
+        
+        if (value instanceof List<?> list)
+        {
+            List<Object> copy = new ArrayList<>(list.size());
+            for (@NullOr Object entry : list) { copy.add((entry == null) ? null : copyValue(entry)); }
+            return copy;
+        }
+        
+        // Strings, numbers, booleans, deferred items, etc. are immutable.
+        return value;
+    }
+    
+    // Rebuilds copied values into the target section, restoring maps as real sections
+    // (and encoding deferred items, which is why this is meant for storage threads).
+    @SuppressWarnings("unchecked")
+    public static void paste(ConfigurationSection target, Map<String, Object> values)
+    {
+        values.forEach((key, value) ->
+        {
+            if (value instanceof Map<?, ?> map) { paste(target.createSection(key), (Map<String, Object>) map); }
+            else if (value instanceof ItemCodec.Deferred deferred) { target.set(key, deferred.encoded()); }
+            else { target.set(key, value); }
+        });
+    }
+}
@@ -0,0 +1,629 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.storage;
+
+import com.rezzedup.util.valuables.Adapter;
+import community.leaf.configvalues.bukkit.YamlValue;
+import community.leaf.survival.staffmode.StaffModePlugin;
+import community.leaf.survival.staffmode.util.ItemCodec;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+// Embedded SQLite database (the driver ships with the server): profile meta is kept in
+// indexed columns, while the bulky per-mode snapshots are separate rows loaded on demand.
+// Binary snapshot values (encoded items) get their own rows as raw bytes rather than base64 YAML.
+public final class SqlProfileStore extends AbstractProfileStore
+{
+    private static final String DRIVER = "org.sqlite.JDBC";
+    
+    private static final String FILE_NAME = "profiles.db";
+    
+    private static final YamlValue<String> META_NAME = YamlValue.ofString("meta.name").maybe();
+    
+    private static final YamlValue<String> META_MODE = YamlValue.ofString("meta.mode").maybe();
+    
+    private static final YamlValue<Instant> META_TOGGLE_TIMESTAMP = YamlValue.ofInstant("meta.toggle").maybe();
+    
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS staff_profiles (" +
+            "uuid TEXT PRIMARY KEY NOT NULL, " +
+            "name TEXT, " +
+            "mode TEXT, " +
+            "toggled_at INTEGER, " +
+            "meta BLOB NOT NULL)",
+        "CREATE INDEX IF NOT EXISTS staff_profiles_by_mode ON staff_profiles (mode, toggled_at)",
+        "CREATE TABLE IF NOT EXISTS staff_snapshots (" +
+            "uuid TEXT NOT NULL, " +
+            "mode TEXT NOT NULL, " +
+            "data BLOB NOT NULL, " +
+            "PRIMARY KEY (uuid, mode))",
+        "CREATE TABLE IF NOT EXISTS staff_snapshot_binaries (" +
+            "uuid TEXT NOT NULL, " +
+            "mode TEXT NOT NULL, " +
+            "path TEXT NOT NULL, " +
+            "data BLOB NOT NULL, " +
+            "PRIMARY KEY (uuid, mode, path))"
+    };
+    
+    // Joins the keys leading to a binary value, can't appear in a section key.
+    private static final String PATH_SEPARATOR = "\u001F";
+    
+    private static final String SELECT_UUIDS = "SELECT uuid FROM staff_profiles";
+    
+    private static final String SELECT_SUMMARIES = "SELECT uuid, name, mode, toggled_at FROM staff_profiles";
+    
+    private static final String SELECT_PROFILE = "SELECT meta FROM staff_profiles WHERE uuid = ?";
+    
+    private static final String SELECT_SNAPSHOTS = "SELECT mode, data FROM staff_snapshots WHERE uuid = ?";
+    
+    private static final String SELECT_BINARIES = "SELECT mode, path, data FROM staff_snapshot_binaries WHERE uuid = ?";
+    
+    private static final String UPSERT_PROFILE =
+        "INSERT OR REPLACE INTO staff_profiles (uuid, name, mode, toggled_at, meta) VALUES (?, ?, ?, ?, ?)";
+    
+    private static final String UPSERT_SNAPSHOT =
+        "INSERT OR REPLACE INTO staff_snapshots (uuid, mode, data) VALUES (?, ?, ?)";
+    
+    private static final String DELETE_PROFILE = "DELETE FROM staff_profiles WHERE uuid = ?";
+    
+    private static final String INSERT_BINARY =
+        "INSERT OR REPLACE INTO staff_snapshot_binaries (uuid, mode, path, data) VALUES (?, ?, ?, ?)";
+    
+    private static final String DELETE_SNAPSHOTS = "DELETE FROM staff_snapshots WHERE uuid = ?";
+    
+    private static final String DELETE_BINARIES = "DELETE FROM staff_snapshot_binaries WHERE uuid = ?";
+    
+    private static final String DELETE_MODE_SNAPSHOT = "DELETE FROM staff_snapshots WHERE uuid = ? AND mode = ?";
+    
+    private static final String DELETE_MODE_BINARIES = "DELETE FROM staff_snapshot_binaries WHERE uuid = ? AND mode = ?";
+    
+    private final Path file;
+    
+    // Imported profiles aren't in the database until they're first saved.
+    private final Map<UUID, ProfileSummary> importedSummaries = new ConcurrentHashMap<>();
+    
+    // Profiles may be read on the main thread or prefetched on the storage thread.
+    private final Object readLock = new Object();
+    
+    // Main thread: loading profiles and their snapshots.
+    private @NullOr Connection reader;
+    
+    // Storage thread: all writes.
+    private @NullOr Connection writer;
+    
+    public SqlProfileStore(StaffModePlugin plugin)
+    {
+        super(plugin);
+        this.file = plugin.directory().resolve("data").resolve(FILE_NAME);
+    }
+    
+    @Override
+    public String name() { return "sqlite"; }
+    
+    public Path file() { return file; }
+    
+    private Connection reader()
+    {
+        if (reader != null) { return reader; }
+        throw new IllegalStateException("Database is not open: " + file);
+    }
+    
+    private Connection writer()
+    {
+        if (writer != null) { return writer; }
+        throw new IllegalStateException("Database is not open: " + file);
+    }
+    
+    private Connection connect() throws SQLException
+    {
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.toAbsolutePath());
+        
+        try (Statement statement = connection.createStatement())
+        {
+            // Write-ahead logging lets the main thread read while the storage thread writes.
+            statement.execute("PRAGMA journal_mode=WAL");
+            statement.execute("PRAGMA synchronous=NORMAL");
+            statement.execute("PRAGMA busy_timeout=5000");
+        }
+        
+        return connection;
+    }
+    
+    private void open() throws Exception
+    {
+        if (reader != null && writer != null) { return; }
+        
+        Class.forName(DRIVER);
+        Files.createDirectories(file.getParent());
+        
+        this.writer = connect();
+        this.reader = connect();
+        
+        try (Statement statement = writer.createStatement())
+        {
+            for (String sql : SCHEMA) { statement.execute(sql); }
+        }
+    }
+    
+    @Override
+    public void load()
+    {
+        try { open(); }
+        catch (Exception e)
+        {
+            throw new IllegalStateException("Unable to open staff mode database: " + file, e);
+        }
+        
+        super.load();
+        
+        if (uuids().isEmpty()) { importYamlProfiles(); }
+    }
+    
+    @Override
+    protected Set<UUID> readIndex()
+    {
+        Set<UUID> uuids = new HashSet<>();
+        
+        synchronized (readLock)
+        {
+            try (PreparedStatement statement = reader().prepareStatement(SELECT_UUIDS);
+                 ResultSet results = statement.executeQuery())
+            {
+                while (results.next())
+                {
+                    Adapter.ofString().intoUuid().deserialize(results.getString(1)).ifPresent(uuids::add);
+                }
+            }
+            catch (SQLException e)
+            {
+                plugin.getLogger().log(Level.SEVERE, "Unable to list staff mode profiles in: " + file, e);
+            }
+        }
+        
+        return uuids;
+    }
+    
+    // Straight from the indexed columns, profile data itself isn't touched.
+    @Override
+    public Map<UUID, ProfileSummary> summaries()
+    {
+        Map<UUID, ProfileSummary> summaries = new HashMap<>();
+        
+        synchronized (readLock)
+        {
+            try (PreparedStatement statement = reader().prepareStatement(SELECT_SUMMARIES);
+                 ResultSet results = statement.executeQuery())
+            {
+                while (results.next())
+                {
+                    @NullOr UUID uuid = Adapter.ofString().intoUuid().deserialize(results.getString(1)).orElse(null);
+                    if (uuid == null) { continue; }
+                    
+                    long toggled = results.getLong(4);
+                    @NullOr Instant toggledAt = (results.wasNull()) ? null : Instant.ofEpochMilli(toggled);
+                    
+                    summaries.put(uuid, new ProfileSummary(
+                        uuid, results.getString(2), ProfileSummary.mode(results.getString(3)), toggledAt
+                    ));
+                }
+            }
+            catch (SQLException e)
+            {
+                plugin.getLogger().log(Level.SEVERE, "Unable to list staff mode profiles in: " + file, e);
+            }
+        }
+        
+        importedSummaries.forEach(summaries::putIfAbsent);
+        return summaries;
+    }
+    
+    @Override
+    protected @NullOr ProfileData read(UUID uuid)
+    {
+        String key = uuid.toString();
+        byte[] meta;
+        
+        synchronized (readLock)
+        {
+            try (PreparedStatement statement = reader().prepareStatement(SELECT_PROFILE))
+            {
+                statement.setString(1, key);
+                
+                try (ResultSet results = statement.executeQuery())
+                {
+                    if (!results.next()) { return null; }
+                    meta = results.getBytes(1);
+                }
+            }
+            catch (SQLException e)
+            {
+                plugin.getLogger().log(Level.SEVERE, "Unable to load staff mode profile: " + uuid, e);
+                return null;
+            }
+        }
+        
+        ProfileData profile = new ProfileData(uuid);
+        
+        try { profile.data().loadFromString(new String(meta, StandardCharsets.UTF_8)); }
+        catch (InvalidConfigurationException e)
+        {
+            plugin.getLogger().log(Level.SEVERE, "Unable to load staff mode profile: " + uuid, e);
+            return null;
+        }
+        
+        profile.loadModesLater(() -> loadModes(uuid));
+        remember(key, meta);
+        return profile;
+    }
+    
+    private Map<String, Object> loadModes(UUID uuid)
+    {
+        Map<String, Map<String, Object>> trees = new LinkedHashMap<>();
+        Map<String, byte[]> texts = new LinkedHashMap<>();
+        Map<String, Map<String, byte[]>> binaries = new LinkedHashMap<>();
+        String key = uuid.toString();
+        
+        synchronized (readLock)
+        {
+            try (PreparedStatement snapshots = reader().prepareStatement(SELECT_SNAPSHOTS);
+                 PreparedStatement blobs = reader().prepareStatement(SELECT_BINARIES))
+            {
+                snapshots.setString(1, key);
+                
+                try (ResultSet results = snapshots.executeQuery())
+                {
+                    while (results.next())
+                    {
+                        String mode = results.getString(1);
+                        byte[] data = results.getBytes(2);
+                        
+                        YamlConfiguration yaml = new YamlConfiguration();
+                        yaml.loadFromString(new String(data, StandardCharsets.UTF_8));
+                        
+                        trees.put(mode, SectionTrees.copy(yaml));
+                        texts.put(mode, data);
+                    }
+                }
+                
+                blobs.setString(1, key);
+                
+                try (ResultSet results = blobs.executeQuery())
+                {
+                    while (results.next())
+                    {
+                        binaries.computeIfAbsent(results.getString(1), k -> new TreeMap<>())
+                            .put(results.getString(2), results.getBytes(3));
+                    }
+                }
+            }
+            catch (SQLException | InvalidConfigurationException e)
+            {
+                plugin.getLogger().log(Level.SEVERE, "Unable to load staff mode snapshots: " + uuid, e);
+                return Map.of();
+            }
+        }
+        
+        Map<String, Object> modes = new LinkedHashMap<>();
+        
+        trees.forEach((mode, tree) ->
+        {
+            Map<String, byte[]> values = binaries.getOrDefault(mode, Map.of());
+            values.forEach((path, bytes) -> insertBinary(tree, path, bytes));
+            
+            modes.put(mode, tree);
+            remember(key + "/" + mode, signature(texts.get(mode), values));
+        });
+        
+        return modes;
+    }
+    
+    // Carry over existing per-file profiles the first time the database is used.
+    private void importYamlProfiles()
+    {
+        YamlProfileStore yaml = new YamlProfileStore(plugin);
+        if (!Files.isDirectory(yaml.directory())) { return; }
+        
+        int imported = 0;
+        importedSummaries.clear();
+        
+        try
+        {
+            yaml.load();
+            
+            for (UUID uuid : yaml.uuids())
+            {
+                @NullOr ProfileData existing = yaml.existing(uuid).orElse(null);
+                if (existing == null) { continue; }
+                
+                ProfileData profile = getOrCreate(uuid);
+                SectionTrees.paste(profile.data(), SectionTrees.copy(existing.data()));
+                profile.updated(true);
+                importedSummaries.put(uuid, ProfileSummary.ofProfile(uuid, existing.data()));
+                imported++;
+            }
+        }
+        finally
+        {
+            yaml.close();
+        }
+        
+        if (imported > 0)
+        {
+            plugin.getLogger().info("Imported " + imported + " staff mode profile(s) into the database.");
+        }
+    }
+    
+    private static byte[] encode(Map<String, Object> tree)
+    {
+        YamlConfiguration yaml = new YamlConfiguration();
+        SectionTrees.paste(yaml, tree);
+        return yaml.saveToString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    // Moves binary values out of the tree (keyed by their path), leaving the rest to be encoded as YAML.
+    private static Map<String, Object> extractBinaries(Map<?, ?> tree, String prefix, Map<String, byte[]> binaries)
+    {
+        Map<String, Object> remaining = new LinkedHashMap<>();
+        
+        tree.forEach((key, value) ->
+        {
+            String path = prefix + key;
+            
+            if (value instanceof byte[] bytes) { binaries.put(path, bytes); }
+            else if (value instanceof ItemCodec.Deferred deferred) { binaries.put(path, deferred.encoded()); }
+            else if (value instanceof Map<?, ?> map) { remaining.put(String.valueOf(key), extractBinaries(map, path + PATH_SEPARATOR, binaries)); }
+            else { remaining.put(String.valueOf(key), value); }
+        });
+        
+        return remaining;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static void insertBinary(Map<String, Object> tree, String path, byte[] bytes)
+    {
+        String[] keys = path.split(PATH_SEPARATOR);
+        Map<String, Object> current = tree;
+        
+        for (int i = 0; i < keys.length - 1; i++)
+        {
+            @NullOr Object next = current.get(keys[i]);
+            
+            if (!(next instanceof Map<?, ?>))
+            {
+                next = new LinkedHashMap<String, Object>();
+                current.put(keys[i], next);
+            }
+            
+            current = (Map<String, Object>) next;
+        }
+        
+        current.put(keys[keys.length - 1], bytes);
+    }
+    
+    // Everything stored for one mode, used to skip unchanged modes (binaries sorted by path).
+    private static byte[] signature(byte[] text, Map<String, byte[]> binaries)
+    {
+        ByteArrayOutputStream signature = new ByteArrayOutputStream(text.length);
+        signature.writeBytes(text);
+        
+        binaries.forEach((path, bytes) ->
+        {
+            signature.writeBytes(path.getBytes(StandardCharsets.UTF_8));
+            signature.writeBytes(bytes);
+        });
+        
+        return signature.toByteArray();
+    }
+    
+    private record Pending(String key, byte[] bytes) {}
+    
+    @Override
+    protected void persist(Map<UUID, Map<String, Object>> copies, Set<UUID> removals, SaveTally tally)
+    {
+        List<Pending> pending = new ArrayList<>();
+        Connection connection = writer();
+        
+        List<String> staleModes = new ArrayList<>();
+        
+        try (PreparedStatement profiles = connection.prepareStatement(UPSERT_PROFILE);
+             PreparedStatement snapshots = connection.prepareStatement(UPSERT_SNAPSHOT);
+             PreparedStatement binaries = connection.prepareStatement(INSERT_BINARY);
+             PreparedStatement deleteModeSnapshots = connection.prepareStatement(DELETE_MODE_SNAPSHOT);
+             PreparedStatement deleteModeBinaries = connection.prepareStatement(DELETE_MODE_BINARIES);
+             PreparedStatement deleteProfiles = connection.prepareStatement(DELETE_PROFILE);
+             PreparedStatement deleteSnapshots = connection.prepareStatement(DELETE_SNAPSHOTS);
+             PreparedStatement deleteBinaries = connection.prepareStatement(DELETE_BINARIES))
+        {
+            long encodeStart = System.nanoTime();
+            
+            for (Map.Entry<UUID, Map<String, Object>> entry : copies.entrySet())
+            {
+                String key = entry.getKey().toString();
+                Map<String, Object> meta = new LinkedHashMap<>(entry.getValue());
+                
+                // Snapshots are stored separately (and only if they were loaded).
+                if (meta.remove(ProfileData.MODES) instanceof Map<?, ?> modes)
+                {
+                    Set<String> stored = writtenKeys(key + "/");
+                    
+                    for (Map.Entry<?, ?> mode : modes.entrySet())
+                    {
+                        if (!(mode.getValue() instanceof Map<?, ?> data)) { continue; }
+                        
+                        String modeName = String.valueOf(mode.getKey());
+                        String modeKey = key + "/" + modeName;
+                        stored.remove(modeKey);
+                        
+                        Map<String, byte[]> values = new TreeMap<>();
+                        byte[] text = encode(extractBinaries(data, "", values));
+                        byte[] bytes = signature(text, values);
+                        
+                        if (!isChanged(modeKey, bytes)) { skipped(bytes, tally); continue; }
+                        
+                        snapshots.setString(1, key);
+                        snapshots.setString(2, modeName);
+                        snapshots.setBytes(3, text);
+                        snapshots.addBatch();
+                        
+                        // The mode is rewritten as a whole, binaries that no longer exist go away too.
+                        deleteModeBinaries.setString(1, key);
+                        deleteModeBinaries.setString(2, modeName);
+                        deleteModeBinaries.addBatch();
+                        
+                        for (Map.Entry<String, byte[]> value : values.entrySet())
+                        {
+                            binaries.setString(1, key);
+                            binaries.setString(2, modeName);
+                            binaries.setString(3, value.getKey());
+                            binaries.setBytes(4, value.getValue());
+                            binaries.addBatch();
+                        }
+                        
+                        pending.add(new Pending(modeKey, bytes));
+                    }
+                    
+                    // Modes the profile doesn't have anymore.
+                    for (String modeKey : stored)
+                    {
+                        String modeName = modeKey.substring(key.length() + 1);
+                        
+                        deleteModeSnapshots.setString(1, key);
+                        deleteModeSnapshots.setString(2, modeName);
+                        deleteModeSnapshots.addBatch();
+                        deleteModeBinaries.setString(1, key);
+                        deleteModeBinaries.setString(2, modeName);
+                        deleteModeBinaries.addBatch();
+                        
+                        staleModes.add(modeKey);
+                    }
+                }
+                
+                byte[] bytes = encode(meta);
+                if (!isChanged(key, bytes)) { skipped(bytes, tally); continue; }
+                
+                YamlConfiguration yaml = new YamlConfiguration();
+                SectionTrees.paste(yaml, meta);
+                
+                profiles.setString(1, key);
+                profiles.setString(2, META_NAME.get(yaml).orElse(null));
+                profiles.setString(3, META_MODE.get(yaml).orElse(null));
+                
+                @NullOr Instant toggled = META_TOGGLE_TIMESTAMP.get(yaml).orElse(null);
+                if (toggled == null) { profiles.setNull(4, Types.INTEGER); }
+                else { profiles.setLong(4, toggled.toEpochMilli()); }
+                
+                profiles.setBytes(5, bytes);
+                profiles.addBatch();
+                
+                pending.add(new Pending(key, bytes));
+            }
+            
+            for (UUID uuid : removals)
+            {
+                deleteProfiles.setString(1, uuid.toString());
+                deleteProfiles.addBatch();
+                deleteSnapshots.setString(1, uuid.toString());
+                deleteSnapshots.addBatch();
+                deleteBinaries.setString(1, uuid.toString());
+                deleteBinaries.addBatch();
+            }
+            
+            long writeStart = System.nanoTime();
+            tally.encodeNanos += writeStart - encodeStart;
+            
+            // Everything from this save is committed (or not) as a whole.
+            connection.setAutoCommit(false);
+            
+            try
+            {
+                profiles.executeBatch();
+                snapshots.executeBatch();
+                deleteModeSnapshots.executeBatch();
+                deleteModeBinaries.executeBatch();
+                binaries.executeBatch();
+                deleteProfiles.executeBatch();
+                deleteSnapshots.executeBatch();
+                deleteBinaries.executeBatch();
+                connection.commit();
+            }
+            catch (SQLException e)
+            {
+                connection.rollback();
+                throw e;
+            }
+            finally
+            {
+                connection.setAutoCommit(true);
+            }
+            
+            tally.writeNanos += System.nanoTime() - writeStart;
+        }
+        catch (SQLException e)
+        {
+            plugin.getLogger().log(Level.SEVERE, "Unable to save staff mode profiles to: " + file, e);
+            copies.keySet().forEach(tally::failed);
+            removals.forEach(tally::failed);
+            return;
+        }
+        
+        for (Pending write : pending) { written(write.key(), write.bytes(), tally); }
+        staleModes.forEach(this::forget);
+        copies.keySet().forEach(importedSummaries::remove);
+        
+        for (UUID uuid : removals)
+        {
+            forget(uuid.toString());
+            forgetAll(uuid + "/");
+            importedSummaries.remove(uuid);
+            tally.deleted++;
+        }
+    }
+    
+    @Override
+    protected void closeResources()
+    {
+        for (@NullOr Connection connection : new Connection[] { reader, writer })
+        {
+            if (connection == null) { continue; }
+            
+            try { connection.close(); }
+            catch (SQLException e)
+            {
+                plugin.getLogger().log(Level.WARNING, "Unable to close staff mode database: " + file, e);
+            }
+        }
+        
+        this.reader = null;
+        this.writer = null;
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.storage;
+
+import community.leaf.survival.staffmode.Mode;
+import community.leaf.survival.staffmode.StaffModePlugin;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+// Write-ahead log of toggles so that a crash between periodic saves can't lose
+// a staff member's inventory. Each record is appended to the current segment:
+//   length (int), type (byte), uuid (2 longs), mode (byte), timestamp (long, epoch millis),
+//   payload (YAML, UTF-8), then a CRC32 (int) of everything after the length.
+// Segments are sealed when data is saved and deleted once that save succeeds.
+public final class ToggleJournal
+{
+    public enum Type { CAPTURE, RESTORE }
+    
+    public record Entry(Type type, UUID uuid, Mode mode, Instant timestamp, YamlConfiguration payload) {}
+    
+    private static final String EXTENSION = ".journal";
+    
+    // Header bytes: type + uuid + mode + timestamp
+    private static final int HEADER_LENGTH = 1 + 16 + 1 + 8;
+    
+    // Appends are fsync'd together at most this often.
+    private static final long SYNC_DELAY_MILLIS = 50;
+    
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable ->
+    {
+        Thread thread = new Thread(runnable, "Survival-Staff-Mode Journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    private final StaffModePlugin plugin;
+    private final Path directory;
+    
+    // Main thread state
+    private long segment = 0;
+    private boolean appendedSinceRotation = false;
+    
+    // Journal thread state
+    private @NullOr FileChannel channel;
+    private boolean syncScheduled = false;
+    
+    public ToggleJournal(StaffModePlugin plugin)
+    {
+        this.plugin = plugin;
+        this.directory = plugin.directory().resolve("data").resolve("journal");
+    }
+    
+    private Path segmentFile(long segment) { return directory.resolve(String.format("%020d", segment) + EXTENSION); }
+    
+    private List<Long> existingSegments()
+    {
+        List<Long> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) { return segments; }
+        
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION))
+        {
+            for (Path file : files)
+            {
+                String name = file.getFileName().toString();
+                
+                try { segments.add(Long.parseLong(name.substring(0, name.length() - EXTENSION.length()))); }
+                catch (NumberFormatException ignored) {}
+            }
+        }
+        catch (IOException e)
+        {
+            plugin.getLogger().log(Level.SEVERE, "Unable to list journal segments in: " + directory, e);
+        }
+        
+        segments.sort(null);
+        return segments;
+    }
+    
+    // Replays all existing segments (oldest first) then starts a new segment.
+    public int open(Consumer<Entry> replay)
+    {
+        List<Long> segments = existingSegments();
+        int replayed = 0;
+        
+        for (long existing : segments)
+        {
+            replayed += replay(segmentFile(existing), replay);
+            segment = Math.max(segment, existing);
+        }
+        
+        long next = ++segment;
+        appendedSinceRotation = false;
+        executor.execute(() -> switchSegment(next));
+        
+        return replayed;
+    }
+    
+    private int replay(Path file, Consumer<Entry> replay)
+    {
+        ByteBuffer buffer;
+        
+        try { buffer = ByteBuffer.wrap(Files.readAllBytes(file)); }
+        catch (IOException e)
+        {
+            plugin.getLogger().log(Level.SEVERE, "Unable to read journal segment: " + file, e);
+            return 0;
+        }
+        
+        int replayed = 0;
+        CRC32 crc = new CRC32();
+        
+        while (buffer.remaining() >= Integer.BYTES)
+        {
+            int length = buffer.getInt();
+            
+            // Torn write at the end of the segment (crashed mid-append) or a garbled length: stop here.
+            // Compared against the remainder so that a huge length can't overflow past the check.
+            if (length < HEADER_LENGTH || length > buffer.remaining() - Integer.BYTES) { break; }
+            
+            int start = buffer.position();
+            crc.reset();
+            crc.update(buffer.array(), start, length);
+            
+            ByteBuffer body = buffer.slice(start, length);
+            buffer.position(start + length);
+            
+            if ((int) crc.getValue() != buffer.getInt())
+            {
+                plugin.getLogger().warning("Skipping corrupted remainder of journal segment: " + file);
+                break;
+            }
+            
+            try
+            {
+                replay.accept(decode(body));
+                replayed++;
+            }
+            catch (RuntimeException | InvalidConfigurationException e)
+            {
+                plugin.getLogger().log(Level.WARNING, "Skipping unreadable journal entry in: " + file, e);
+            }
+        }
+        
+        return replayed;
+    }
+    
+    private static Entry decode(ByteBuffer body) throws InvalidConfigurationException
+    {
+        Type type = Type.values()[body.get()];
+        UUID uuid = new UUID(body.getLong(), body.getLong());
+        Mode mode = Mode.values()[body.get()];
+        Instant timestamp = Instant.ofEpochMilli(body.getLong());
+        
+        byte[] payload = new byte[body.remaining()];
+        body.get(payload);
+        
+        YamlConfiguration yaml = new YamlConfiguration();
+        if (payload.length > 0) { yaml.loadFromString(new String(payload, StandardCharsets.UTF_8)); }
+        
+        return new Entry(type, uuid, mode, timestamp, yaml);
+    }
+    
+    private static ByteBuffer encode(Type type, UUID uuid, Mode mode, Instant timestamp, byte[] payload)
+    {
+        int length = HEADER_LENGTH + payload.length;
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + length + Integer.BYTES);
+        
+        buffer.putInt(length);
+        buffer.put((byte) type.ordinal());
+        buffer.putLong(uuid.getMostSignificantBits());
+        buffer.putLong(uuid.getLeastSignificantBits());
+        buffer.put((byte) mode.ordinal());
+        buffer.putLong(timestamp.toEpochMilli());
+        buffer.put(payload);
+        
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), Integer.BYTES, length);
+        buffer.putInt((int) crc.getValue());
+        
+        return buffer.flip();
+    }
+    
+    public void captured(UUID uuid, Mode mode, Map<String, Object> snapshot)
+    {
+        append(Type.CAPTURE, uuid, mode, Instant.now(), snapshot);
+    }
+    
+    public void restored(UUID uuid, Mode mode, Instant timestamp)
+    {
+        append(Type.RESTORE, uuid, mode, timestamp, Map.of());
+    }
+    
+    private void append(Type type, UUID uuid, Mode mode, Instant timestamp, Map<String, Object> payload)
+    {
+        appendedSinceRotation = true;
+        
+        executor.execute(() ->
+        {
+            byte[] bytes = new byte[0];
+            
+            if (!payload.isEmpty())
+            {
+                YamlConfiguration yaml = new YamlConfiguration();
+                SectionTrees.paste(yaml, payload);
+                bytes = yaml.saveToString().getBytes(StandardCharsets.UTF_8);
+            }
+            
+            write(encode(type, uuid, mode, timestamp, bytes));
+        });
+    }
+    
+    // Journal thread
+    private void write(ByteBuffer buffer)
+    {
+        if (channel == null) { return; }
+        
+        try
+        {
+            while (buffer.hasRemaining()) { channel.write(buffer); }
+            
+            if (!syncScheduled)
+            {
+                syncScheduled = true;
+                executor.schedule(this::sync, SYNC_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+        catch (IOException e)
+        {
+            plugin.getLogger().log(Level.SEVERE, "Unable to append to toggle journal", e);
+        }
+    }
+    
+    // Journal thread
+    private void sync()
+    {
+        syncScheduled = false;
+        if (channel == null) { return; }
+        
+        try { channel.force(false); }
+        catch (IOException e) { plugin.getLogger().log(Level.SEVERE, "Unable to sync toggle journal", e); }
+    }
+    
+    // Journal thread
+    private void closeChannel()
+    {
+        if (channel == null) { return; }
+        
+        sync();
+        
+        try { channel.close(); }
+        catch (IOException e) { e.printStackTrace(); }
+        
+        channel = null;
+    }
+    
+    // Journal thread
+    private void switchSegment(long next)
+    {
+        closeChannel();
+        
+        try
+        {
+            Files.createDirectories(directory);
+            channel = FileChannel.open(
+                segmentFile(next),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND
+            );
+        }
+        catch (IOException e)
+        {
+            plugin.getLogger().log(Level.SEVERE, "Unable to open journal segment: " + segmentFile(next), e);
+        }
+    }
+    
+    // Seals the current segment (if anything was appended to it) and returns the
+    // segment that new entries go to. Everything before it is covered by the next save.
+    public long rotate()
+    {
+        if (!appendedSinceRotation) { return segment; }
+        
+        long next = ++segment;
+        appendedSinceRotation = false;
+        executor.execute(() -> switchSegment(next));
+        return next;
+    }
+    
+    // Compaction: entries in these segments were folded into the profile store.
+    public void discardBefore(long segment)
+    {
+        executor.execute(() ->
+        {
+            for (long existing : existingSegments())
+            {
+                if (existing >= segment) { continue; }
+                
+                try { Files.deleteIfExists(segmentFile(existing)); }
+                catch (IOException e) { e.printStackTrace(); }
+            }
+        });
+    }
+    
+    public void close()
+    {
+        executor.execute(this::closeChannel);
+        executor.shutdown();
+        
+        try { executor.awaitTermination(10, TimeUnit.SECONDS); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.storage;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Running totals of profile writes versus writes skipped because the content was unchanged.
+public final class WriteCounters
+{
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong skippedBytes = new AtomicLong();
+    
+    void written(int bytes)
+    {
+        written.incrementAndGet();
+        writtenBytes.addAndGet(bytes);
+    }
+    
+    void skipped(int bytes)
+    {
+        skipped.incrementAndGet();
+        skippedBytes.addAndGet(bytes);
+    }
+    
+    public long written() { return written.get(); }
+    
+    public long writtenBytes() { return writtenBytes.get(); }
+    
+    public long skipped() { return skipped.get(); }
+    
+    public long skippedBytes() { return skippedBytes.get(); }
+    
+    public String summary()
+    {
+        return String.format(
+            "%d written (%,d bytes), %d unchanged & skipped (%,d bytes)",
+            written(), writtenBytes(), skipped(), skippedBytes()
+        );
+    }
+}
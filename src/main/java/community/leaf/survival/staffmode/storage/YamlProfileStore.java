@@ -0,0 +1,355 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.storage;
+
+import com.rezzedup.util.valuables.Adapter;
+import community.leaf.survival.staffmode.StaffModePlugin;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public final class YamlProfileStore extends AbstractProfileStore
+{
+    private static final String EXTENSION = ".yml";
+    
+    private static final String TEMP_EXTENSION = ".tmp";
+    
+    private static final String LEGACY_FILE_NAME = "staff-mode.data.yml";
+    
+    private static final String LEGACY_PROFILES_PATH = "staff-mode.profiles";
+    
+    private static final String INDEX_FILE_NAME = "profiles.index.yml";
+    
+    // Hash key of the index file (profiles are keyed by their uuid).
+    private static final String INDEX_KEY = "#index";
+    
+    // Name, mode and last toggle of every stored profile, kept in sync with each save.
+    private final Map<UUID, ProfileSummary> summaries = new ConcurrentHashMap<>();
+    
+    // Summaries changed since the index was last written (e.g. the write failed).
+    private volatile boolean isIndexOutdated = false;
+    
+    private final Path directory;
+    private final Path legacyFile;
+    private final Path indexFile;
+    
+    public YamlProfileStore(StaffModePlugin plugin)
+    {
+        super(plugin);
+        
+        Path data = plugin.directory().resolve("data");
+        
+        this.directory = data.resolve("profiles");
+        this.legacyFile = data.resolve(LEGACY_FILE_NAME);
+        this.indexFile = data.resolve(INDEX_FILE_NAME);
+    }
+    
+    @Override
+    public String name() { return "yaml"; }
+    
+    public Path directory() { return directory; }
+    
+    private Path profileFile(UUID uuid) { return directory.resolve(uuid + EXTENSION); }
+    
+    @Override
+    protected Set<UUID> readIndex()
+    {
+        migrateLegacyData();
+        
+        Set<UUID> uuids = new HashSet<>();
+        if (!Files.isDirectory(directory)) { return uuids; }
+        
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION))
+        {
+            for (Path file : files)
+            {
+                String name = file.getFileName().toString();
+                String uuid = name.substring(0, name.length() - EXTENSION.length());
+                
+                Adapter.ofString().intoUuid().deserialize(uuid).ifPresent(uuids::add);
+            }
+        }
+        catch (IOException e)
+        {
+            plugin.getLogger().log(Level.SEVERE, "Unable to list staff mode profiles in: " + directory, e);
+        }
+        
+        loadSummaries(uuids);
+        return uuids;
+    }
+    
+    @Override
+    public Map<UUID, ProfileSummary> summaries() { return Map.copyOf(summaries); }
+    
+    // Summaries come from the index file, only profiles missing from it are read in full.
+    private void loadSummaries(Set<UUID> uuids)
+    {
+        summaries.clear();
+        
+        YamlConfiguration index = new YamlConfiguration();
+        
+        if (Files.isRegularFile(indexFile))
+        {
+            try { index.loadFromString(Files.readString(indexFile)); }
+            catch (IOException | InvalidConfigurationException e)
+            {
+                plugin.getLogger().log(Level.WARNING, "Rebuilding invalid staff mode profile index: " + indexFile, e);
+            }
+        }
+        
+        int missing = 0;
+        
+        for (UUID uuid : uuids)
+        {
+            @NullOr ConfigurationSection entry = index.getConfigurationSection(uuid.toString());
+            
+            if (entry != null)
+            {
+                summaries.put(uuid, ProfileSummary.ofIndex(uuid, entry));
+                continue;
+            }
+            
+            @NullOr ProfileData profile = read(uuid);
+            if (profile == null) { continue; }
+            
+            summaries.put(uuid, ProfileSummary.ofProfile(uuid, profile.data()));
+            missing++;
+        }
+        
+        if (missing > 0 || index.getKeys(false).size() != summaries.size()) { writeSummaries(); }
+    }
+    
+    private void writeSummaries()
+    {
+        YamlConfiguration index = new YamlConfiguration();
+        summaries.values().forEach(summary -> summary.index(index.createSection(summary.uuid().toString())));
+        
+        byte[] output = index.saveToString().getBytes(StandardCharsets.UTF_8);
+        
+        if (!isChanged(INDEX_KEY, output))
+        {
+            isIndexOutdated = false;
+            return;
+        }
+        
+        try
+        {
+            write(indexFile, output);
+            remember(INDEX_KEY, output);
+            isIndexOutdated = false;
+        }
+        catch (IOException e)
+        {
+            plugin.getLogger().log(Level.WARNING, "Unable to save staff mode profile index: " + indexFile, e);
+        }
+    }
+    
+    @Override
+    protected @NullOr ProfileData read(UUID uuid)
+    {
+        Path file = profileFile(uuid);
+        ProfileData profile = new ProfileData(uuid);
+        
+        try
+        {
+            byte[] bytes = Files.readAllBytes(file);
+            profile.data().loadFromString(new String(bytes, StandardCharsets.UTF_8));
+            remember(uuid.toString(), bytes);
+            return profile;
+        }
+        catch (NoSuchFileException e)
+        {
+            return null;
+        }
+        catch (IOException | InvalidConfigurationException e)
+        {
+            Logger logger = plugin.getLogger();
+            logger.log(Level.SEVERE, "Unable to load staff mode profile: " + file, e);
+            logger.log(Level.SEVERE, "Moving invalid profile to backups just in case...");
+            
+            backup(file, "error");
+            return null;
+        }
+    }
+    
+    private void backup(Path file, String reason)
+    {
+        String name = file.getFileName().toString();
+        Path backup = plugin.backups().resolve(name + "." + reason + "." + Instant.now().toEpochMilli());
+        
+        try
+        {
+            Files.createDirectories(backup.getParent());
+            Files.move(file, backup, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e)
+        {
+            plugin.getLogger().log(Level.SEVERE, "Unable to back up file: " + file, e);
+        }
+    }
+    
+    // One-time conversion of the monolithic staff-mode.data.yml file
+    private void migrateLegacyData()
+    {
+        if (!Files.isRegularFile(legacyFile)) { return; }
+        
+        Logger logger = plugin.getLogger();
+        logger.info("Migrating legacy staff mode data into separate profile files...");
+        
+        YamlConfiguration legacy = new YamlConfiguration();
+        
+        try { legacy.loadFromString(Files.readString(legacyFile)); }
+        catch (IOException | InvalidConfigurationException e)
+        {
+            logger.log(Level.SEVERE, "Unable to migrate legacy data: " + legacyFile, e);
+            return;
+        }
+        
+        @NullOr ConfigurationSection profiles = legacy.getConfigurationSection(LEGACY_PROFILES_PATH);
+        int migrated = 0;
+        
+        if (profiles != null)
+        {
+            for (String key : profiles.getKeys(false))
+            {
+                @NullOr UUID uuid = Adapter.ofString().intoUuid().deserialize(key).orElse(null);
+                @NullOr ConfigurationSection section = profiles.getConfigurationSection(key);
+                
+                if (uuid == null || section == null) { continue; }
+                
+                ProfileData profile = new ProfileData(uuid);
+                SectionTrees.paste(profile.data(), SectionTrees.copy(section));
+                
+                try
+                {
+                    write(profileFile(uuid), profile.data().saveToString().getBytes(StandardCharsets.UTF_8));
+                    migrated++;
+                }
+                catch (IOException e)
+                {
+                    // Leave the legacy file in place so that migration is retried next time.
+                    logger.log(Level.SEVERE, "Unable to migrate legacy profile: " + uuid, e);
+                    return;
+                }
+            }
+        }
+        
+        backup(legacyFile, "migrated");
+        logger.info("Migrated " + migrated + " staff mode profile(s).");
+    }
+    
+    @Override
+    protected void persist(Map<UUID, Map<String, Object>> copies, Set<UUID> removals, SaveTally tally)
+    {
+        for (Map.Entry<UUID, Map<String, Object>> entry : copies.entrySet())
+        {
+            UUID uuid = entry.getKey();
+            String key = uuid.toString();
+            
+            long encodeStart = System.nanoTime();
+            YamlConfiguration yaml = new YamlConfiguration();
+            SectionTrees.paste(yaml, entry.getValue());
+            byte[] output = yaml.saveToString().getBytes(StandardCharsets.UTF_8);
+            ProfileSummary summary = ProfileSummary.ofProfile(uuid, yaml);
+            if (!summary.equals(summaries.put(uuid, summary))) { isIndexOutdated = true; }
+            
+            long writeStart = System.nanoTime();
+            tally.encodeNanos += writeStart - encodeStart;
+            
+            // Marked as updated but nothing actually changed since the last write.
+            if (!isChanged(key, output))
+            {
+                skipped(output, tally);
+                continue;
+            }
+            
+            try
+            {
+                write(profileFile(uuid), output);
+                written(key, output, tally);
+            }
+            catch (IOException e)
+            {
+                plugin.getLogger().log(Level.SEVERE, "Unable to save staff mode profile: " + uuid, e);
+                tally.failed(uuid);
+            }
+            
+            tally.writeNanos += System.nanoTime() - writeStart;
+        }
+        
+        long deleteStart = System.nanoTime();
+        
+        for (UUID uuid : removals)
+        {
+            forget(uuid.toString());
+            if (summaries.remove(uuid) != null) { isIndexOutdated = true; }
+            
+            try
+            {
+                Files.deleteIfExists(profileFile(uuid));
+                tally.deleted++;
+            }
+            catch (IOException e)
+            {
+                plugin.getLogger().log(Level.SEVERE, "Unable to delete staff mode profile: " + uuid, e);
+                tally.failed(uuid);
+            }
+        }
+        
+        // Only names, modes and toggle times are indexed, most saves don't touch any of them.
+        if (isIndexOutdated) { writeSummaries(); }
+        
+        tally.writeNanos += System.nanoTime() - deleteStart;
+    }
+    
+    // Write to a temporary file, flush it to disk, then atomically swap it into place
+    // so that a crash mid-write never leaves a truncated profile behind.
+    private void write(Path file, byte[] bytes) throws IOException
+    {
+        Files.createDirectories(file.getParent());
+        
+        // Unique, so that another store writing the same file (e.g. while reloading) never shares it.
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName() + ".", TEMP_EXTENSION);
+        
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) { channel.write(buffer); }
+            channel.force(true);
+        }
+        catch (IOException e)
+        {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        
+        try { Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING); }
+        catch (AtomicMoveNotSupportedException e) { Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING); }
+    }
+}
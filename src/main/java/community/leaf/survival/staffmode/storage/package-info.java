@@ -0,0 +1,11 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+@NonNullPackage
+package community.leaf.survival.staffmode.storage;
+
+import pl.tlinkowski.annotation.basic.NonNullPackage;
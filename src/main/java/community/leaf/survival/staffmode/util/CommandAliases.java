@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.util;
+
+import pl.tlinkowski.annotation.basic.NullOr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Matches the first word of a command message against a table of aliases without copying or splitting it.
+public final class CommandAliases
+{
+    public static final CommandAliases EMPTY = new CommandAliases(Map.of());
+    
+    // Aliases bucketed by length, so only same-length candidates are ever compared.
+    private final String[][] aliasesByLength;
+    private final String[][] targetsByLength;
+    
+    public CommandAliases(Map<String, String> aliases)
+    {
+        int max = aliases.keySet().stream().mapToInt(String::length).max().orElse(0);
+        
+        List<List<String>> aliasBuckets = new ArrayList<>();
+        List<List<String>> targetBuckets = new ArrayList<>();
+        
+        for (int i = 0; i <= max; i++)
+        {
+            aliasBuckets.add(new ArrayList<>());
+            targetBuckets.add(new ArrayList<>());
+        }
+        
+        aliases.forEach((alias, target) ->
+        {
+            if (alias.isEmpty() || target.isBlank()) { return; }
+            
+            aliasBuckets.get(alias.length()).add(alias.toLowerCase(Locale.ROOT));
+            targetBuckets.get(alias.length()).add(target.strip());
+        });
+        
+        this.aliasesByLength = aliasBuckets.stream().map(bucket -> bucket.toArray(String[]::new)).toArray(String[][]::new);
+        this.targetsByLength = targetBuckets.stream().map(bucket -> bucket.toArray(String[]::new)).toArray(String[][]::new);
+    }
+    
+    // End index of the first word in a "/command args..." message.
+    public static int commandEnd(String message)
+    {
+        int end = 1;
+        while (end < message.length() && !Character.isWhitespace(message.charAt(end))) { end++; }
+        return end;
+    }
+    
+    // Rewritten message if the command is an alias, otherwise null (only allocates on a match).
+    public @NullOr String rewrite(String message, int end)
+    {
+        int length = end - 1;
+        if (length <= 0 || length >= aliasesByLength.length) { return null; }
+        
+        String[] aliases = aliasesByLength[length];
+        
+        for (int i = 0; i < aliases.length; i++)
+        {
+            if (message.regionMatches(true, 1, aliases[i], 0, length))
+            {
+                return "/" + targetsByLength[length][i] + message.substring(end);
+            }
+        }
+        
+        return null;
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright © 2021-2022, RezzedUp <https://github.com/LeafCommunity/Survival-Staff-Mode>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package community.leaf.survival.staffmode.util;
+
+import io.papermc.lib.PaperLib;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.io.BukkitObjectInputStream;
+import org.bukkit.util.io.BukkitObjectOutputStream;
+import pl.tlinkowski.annotation.basic.NullOr;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// Binary item array format:
+//   magic (1 byte), version (1 byte), flags (1 byte), then the body,
+//   deflated if the COMPRESSED flag is set.
+// Body: item count (int), then for each item its length (int, 0 = empty slot)
+// followed by the item's NBT bytes as produced by Paper's ItemStack#serializeAsBytes.
+public final class ItemCodec
+{
+    private ItemCodec() {}
+    
+    private static final byte MAGIC = 0x53;
+    
+    private static final byte VERSION = 1;
+    
+    private static final byte COMPRESSED = 1;
+    
+    // Small inventories aren't worth deflating.
+    private static final int COMPRESSION_THRESHOLD = 256;
+    
+    private static final ItemStack[] EMPTY = new ItemStack[0];
+    
+    public static boolean isBinarySupported() { return PaperLib.isPaper(); }
+    
+    public static boolean isBinary(byte[] bytes) { return bytes.length >= 3 && bytes[0] == MAGIC; }
+    
+    public static byte[] encode(@NullOr ItemStack[] items)
+    {
+        try
+        {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            
+            try (DataOutputStream output = new DataOutputStream(body))
+            {
+                output.writeInt(items.length);
+                
+                for (@NullOr ItemStack item : items)
+                {
+                    if (item == null || item.getType().isAir())
+                    {
+                        output.writeInt(0);
+                        continue;
+                    }
+                    
+                    byte[] serialized = item.serializeAsBytes();
+                    output.writeInt(serialized.length);
+                    output.write(serialized);
+                }
+            }
+            
+            byte[] uncompressed = body.toByteArray();
+            byte flags = 0;
+            byte[] payload = uncompressed;
+            
+            if (uncompressed.length >= COMPRESSION_THRESHOLD)
+            {
+                byte[] deflated = deflate(uncompressed);
+                
+                if (deflated.length < uncompressed.length)
+                {
+                    flags |= COMPRESSED;
+                    payload = deflated;
+                }
+            }
+            
+            byte[] encoded = new byte[payload.length + 3];
+            encoded[0] = MAGIC;
+            encoded[1] = VERSION;
+            encoded[2] = flags;
+            System.arraycopy(payload, 0, encoded, 3, payload.length);
+            return encoded;
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Could not encode items", e);
+        }
+    }
+    
+    private static byte[] deflate(byte[] bytes) throws IOException
+    {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 2);
+        
+        try (DeflaterOutputStream output = new DeflaterOutputStream(compressed, deflater))
+        {
+            output.write(bytes);
+        }
+        finally
+        {
+            deflater.end();
+        }
+        
+        return compressed.toByteArray();
+    }
+    
+    public static @NullOr ItemStack[] decode(byte[] bytes)
+    {
+        if (!isBinary(bytes)) { throw new IllegalArgumentException("Not a binary item array"); }
+        
+        byte version = bytes[1];
+        if (version != VERSION) { throw new IllegalArgumentException("Unsupported item array version: " + version); }
+        
+        InputStream body = new ByteArrayInputStream(bytes, 3, bytes.length - 3);
+        if ((bytes[2] & COMPRESSED) != 0) { body = new InflaterInputStream(body); }
+        
+        try (DataInputStream input = new DataInputStream(body))
+        {
+            int count = input.readInt();
+            if (count == 0) { return EMPTY; }
+            
+            @NullOr ItemStack[] items = new ItemStack[count];
+            
+            for (int i = 0; i < count; i++)
+            {
+                int length = input.readInt();
+                if (length <= 0) { continue; }
+                
+                byte[] serialized = new byte[length];
+                input.readFully(serialized);
+                items[i] = ItemStack.deserializeBytes(serialized);
+            }
+            
+            return items;
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Could not decode items", e);
+        }
+    }
+    
+    // Legacy format: Java serialization via BukkitObjectOutputStream, encoded as Base64 text.
+    
+    public static String encodeLegacyBase64(@NullOr ItemStack[] items)
+    {
+        try
+        (
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            BukkitObjectOutputStream output = new BukkitObjectOutputStream(bytes);
+        )
+        {
+            output.writeInt(items.length);
+            for (@NullOr ItemStack item : items) { output.writeObject(item); }
+            output.flush();
+            return Base64.getEncoder().encodeToString(bytes.toByteArray());
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Could not encode items into Base64", e);
+        }
+    }
+    
+    public static @NullOr ItemStack[] decodeLegacyBase64(String base64)
+    {
+        try
+        (
+            ByteArrayInputStream bytes = new ByteArrayInputStream(Base64.getDecoder().decode(base64));
+            BukkitObjectInputStream input = new BukkitObjectInputStream(bytes);
+        )
+        {
+            @NullOr ItemStack[] items = new ItemStack[input.readInt()];
+            for (int i = 0; i < items.length; i++) { items[i] = (ItemStack) input.readObject(); }
+            return items;
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Could not decode items from Base64", e);
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    // Decodes either format from a stored value: binary bytes or legacy Base64 text.
+    public static @NullOr ItemStack[] decodeStored(@NullOr Object stored)
+    {
+        if (stored instanceof Deferred deferred) { return deferred.items(); }
+        if (stored instanceof byte[] bytes) { return decode(bytes); }
+        if (stored instanceof String base64 && !base64.isEmpty()) { return decodeLegacyBase64(base64); }
+        return EMPTY;
+    }
+    
+    // Encodes into the best format supported by the server.
+    public static Object encodeForStorage(@NullOr ItemStack[] items)
+    {
+        return (isBinarySupported()) ? encode(items) : encodeLegacyBase64(items);
+    }
+    
+    // Like encodeForStorage, but binary encoding is put off until whoever persists it asks for the bytes
+    // (on a storage thread), only cloning the items right now.
+    public static Object deferForStorage(@NullOr ItemStack[] items)
+    {
+        return (isBinarySupported()) ? new Deferred(items) : encodeLegacyBase64(items);
+    }
+    
+    // Items waiting to be encoded, the result is kept once it's needed.
+    public static final class Deferred
+    {
+        private final @NullOr ItemStack[] items;
+        private @NullOr byte[] encoded;
+        
+        private Deferred(@NullOr ItemStack[] items)
+        {
+            this.items = new ItemStack[items.length];
+            
+            for (int i = 0; i < items.length; i++)
+            {
+                @NullOr ItemStack item = items[i];
+                this.items[i] = (item == null) ? null : item.clone();
+            }
+        }
+        
+        public @NullOr ItemStack[] items()
+        {
+            @NullOr ItemStack[] copy = new ItemStack[items.length];
+            
+            for (int i = 0; i < items.length; i++)
+            {
+                @NullOr ItemStack item = items[i];
+                copy[i] = (item == null) ? null : item.clone();
+            }
+            
+            return copy;
+        }
+        
+        public synchronized byte[] encoded()
+        {
+            @NullOr byte[] existing = encoded;
+            if (existing != null) { return existing; }
+            
+            byte[] bytes = encode(items);
+            encoded = bytes;
+            return bytes;
+        }
+    }
+}
@@ -11,6 +11,7 @@ import community.leaf.tasks.minecraft.Ticks;
 import org.bukkit.entity.Player;
 import org.bukkit.potion.PotionEffect;
 import org.bukkit.potion.PotionEffectType;
+import pl.tlinkowski.annotation.basic.NullOr;
 
 import java.util.concurrent.TimeUnit;
 
@@ -24,4 +25,20 @@ public class NightVision
     public static void apply(Player player) { player.addPotionEffect(EFFECT); }
     
     public static void remove(Player player) { player.removePotionEffect(PotionEffectType.NIGHT_VISION); }
+    
+    // Only removes night vision that looks like ours (no particles or icon), not a potion they drank.
+    public static void removeApplied(Player player)
+    {
+        @NullOr PotionEffect active = player.getPotionEffect(PotionEffectType.NIGHT_VISION);
+        if (active == null) { return; }
+        
+        if (active.getAmplifier() == EFFECT.getAmplifier()
+            && active.isAmbient() == EFFECT.isAmbient()
+            && active.hasParticles() == EFFECT.hasParticles()
+            && active.hasIcon() == EFFECT.hasIcon()
+            && active.getDuration() <= EFFECT.getDuration())
+        {
+            remove(player);
+        }
+    }
 }